@@ -3,7 +3,12 @@ package eden.wavplay;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
@@ -22,12 +27,22 @@ public class WavPlay {
 	/** {@code Scanner} from which to get user input */
 	private static final Scanner scanner = new Scanner(System.in);
 
-	/** Handles audio playback */
-	private static final GDMAudioEngine audio = new GDMAudioEngine(2);
-
 
 	// static variables
 
+	/** Handles audio playback, with a channel for the current track, each
+		track ahead and one to spare
+	*/
+	private static GDMAudioEngine audio;
+
+	/** Number of tracks to be loaded ahead */
+	private static int lookahead = 2;
+
+	/** Most bytes of track files to be loaded ahead, though the next track is
+		always loaded
+	*/
+	private static long budget = Runtime.getRuntime().maxMemory() / 4;
+
 	/** {@code Modal} for printouts
 		@see    {@link Modal}
 	*/
@@ -130,134 +145,174 @@ public class WavPlay {
 		return perfect;
 	}
 
-	/** Plays audio track files
+	/** Plays audio track files. Tracks ahead are loaded in the background
+		while the current one plays, so that a slow load delays neither the
+		printouts nor, as long as it finishes in time, the transition. A track
+		that fails to load is passed over, however many fail in a row
 
 		@param      track
 					Number of tracks to be played
-
-		@throws     IOException
-					If an I/O exception occurs
-
-		@throws     UnsupportedAudioFileException
-					If the audio resource does not contain valid data of a
-					recognized file type and format
-
-		@throws     IllegalStateException
-					If there are no free channels available for use
-
-		@throws     LineUnavailableException
-					If a line can not be opened because it is unavailable
 	*/
 	private static void playTracks(byte tracks) {
-		byte current = loadTrack((byte) 1);
-		byte next = Byte.MIN_VALUE;
+		final ArrayDeque<Track> ahead = new ArrayDeque<>();
+		byte current = Byte.MIN_VALUE;
 		byte number = Byte.MIN_VALUE;
+		byte scheduled = 0;
+		long aheadBytes = 0;
 		modal.println(Modal.Mode.ALERT, "BEGIN PLAYBACK SEQUENCE");
 
-		sequence:
-		for (byte b = 1; b <= tracks;) {
-			audio.play(current);
-			number = b;
+		while (true) {
 
-			modal.println(Modal.Mode.INFO,
-				"Playing track " + number + "/" + tracks + "...");
+			// take the next track that loaded, waiting while current plays
+			Track track = null;
+			byte next = Byte.MIN_VALUE;
+			int failed = 0;
 
-			// loop
-			if ((b == tracks) && looped) {
-				b = 0;
-			}
+			while (next < 0) {
+
+				// load ahead within budget, at least the next track
+				while ((ahead.size() < lookahead)
+					&& (looped || scheduled < tracks) && (tracks > 0)) {
 
-			// seek and preload next track
-			while (b++ < tracks) {
-				next  = loadTrack(b);
+					final byte b = (byte) (scheduled % tracks + 1);
+					final long bytes = trackSize(b);
 
-				if (next != Byte.MIN_VALUE) {
+					if (!ahead.isEmpty() && (aheadBytes + bytes > budget)) {
+						break;
+					}
+					ahead.add(new Track(b, bytes, loadTrack(b)));
+					aheadBytes += bytes;
+					scheduled = b;
+				}
+
+				// none left, or a whole lap failed
+				if (ahead.isEmpty() || (failed >= tracks)) {
 					break;
 				}
+				track = ahead.poll();
+				aheadBytes -= track.bytes;
+				next = track.await();
+
+				if (next < 0) {
+					failed++;
+				}
 			}
 
-			audio.await(current);
+			if (current >= 0) {
 
-			try {
-				audio.unload(current);
-				modal.println(Modal.Mode.DEBUG, "Unload track " + number);
-			} catch (IOException e) {
+				// queue next track for a gapless transition
+				if (next >= 0) {
+					audio.playNext(current, next);
+				}
+				audio.await(current);
 
-				modal.println(Modal.Mode.ERROR, "An I/O error has occured "
-					+ "while unloading track " + number);
+				try {
+					audio.unload(current);
+					modal.println(Modal.Mode.DEBUG, "Unload track " + number);
+				} catch (IOException e) {
 
-				modal.println(Modal.Mode.DEBUG, "Exception caught: "
-					+ e.toString());
+					modal.println(Modal.Mode.ERROR, "An I/O error has occured "
+						+ "while unloading track " + number);
 
-				break sequence;
+					modal.println(Modal.Mode.DEBUG, "Exception caught: "
+						+ e.toString());
+
+					break;
+				}
+			} else if (next >= 0) {
+				audio.play(next);
+			}
+
+			if (next < 0) {
+				break;
 			}
 			current = next;
+			number = track.number;
+
+			modal.println(Modal.Mode.INFO,
+				"Playing track " + number + "/" + tracks + "...");
 		}
 		modal.println(Modal.Mode.ALERT, "PLAYBACK SEQUENCE END");
 	}
 
-	/** Loads an audio track file
+	/** Returns the size of an audio track file
 
 		@param      track
-					Audio track file to be loaded
+					Audio track file
 
-		@return     The channel number mapped the track maps to
+		@return     Size in bytes, or 0 if unknown
 	*/
-	private static byte loadTrack(byte track) {
+	private static long trackSize(byte track) {
 
 		try {
+			return Files.size(Paths.get(track + ".wav"));
+		} catch (IOException e) {
+			return 0;
+		}
+	}
 
-			if (Files.exists(Paths.get(track + ".wav"))) {
-				final Byte out = (byte) audio.load(track + ".wav");
+	/** Loads an audio track file in the background
 
-				modal.println(Modal.Mode.DEBUG,
-					"Load track " + track + " to channel " + out);
+		@param      track
+					Audio track file to be loaded
 
-				return out;
-			}
+		@return     The channel number mapped the track maps to, once loaded
+	*/
+	private static CompletableFuture<Byte> loadTrack(byte track) {
+
+		if (!Files.exists(Paths.get(track + ".wav"))) {
 			modal.println(Modal.Mode.DEBUG, "Missing track " + track);
-			return Byte.MIN_VALUE;
-		} catch (IOException e) {
+			return CompletableFuture.completedFuture(Byte.MIN_VALUE);
+		}
+		return audio.loadAsync(Paths.get(track + ".wav")).handle((out, e) -> {
 
-			modal.println(Modal.Mode.ERROR,
-				"An I/O error has occured while loading track " + track);
+			if (e == null) {
 
-			modal.println(Modal.Mode.DEBUG,
-				"Exception caught: " + e.toString());
+				modal.println(Modal.Mode.DEBUG,
+					"Load track " + track + " to channel " + out);
 
-			return -1;
+				return out.byteValue();
+			}
+			printLoadError(track,
+				(e instanceof CompletionException) ? e.getCause() : e);
 
-		} catch (UnsupportedAudioFileException e) {
+			return (byte) -1;
+		});
+	}
 
-			modal.println(Modal.Mode.ERROR,
-				track + ".wav does not contain recognizable valid data");
+	/** Prints why an audio track file failed to load
 
-			modal.println(Modal.Mode.DEBUG,
-				"Exception caught: " + e.toString());
+		@param      track
+					Audio track file that failed to load
 
-			return -1;
+		@param      e
+					Exception the load failed with
+	*/
+	private static void printLoadError(byte track, Throwable e) {
 
-		} catch (IllegalStateException e) {
+		if (e instanceof IOException) {
 
 			modal.println(Modal.Mode.ERROR,
-				"An audio engine error has occured while loading track " + track);
+				"An I/O error has occured while loading track " + track);
 
-			modal.println(Modal.Mode.DEBUG,
-				"Exception caught: " + e.toString());
+		} else if (e instanceof UnsupportedAudioFileException) {
 
-			return -1;
+			modal.println(Modal.Mode.ERROR,
+				track + ".wav does not contain recognizable valid data");
 
-		} catch (LineUnavailableException e) {
+		} else if (e instanceof LineUnavailableException) {
 
 			modal.println(Modal.Mode.ERROR,
 				"A line can not be opened for track " + track);
 
-			modal.println(Modal.Mode.DEBUG,
-				"Exception caught: " + e.toString());
-
-			return -1;
+		} else {
 
+			modal.println(Modal.Mode.ERROR,
+				"An audio engine error has occured while loading track " + track);
 		}
+
+		modal.println(Modal.Mode.DEBUG,
+			"Exception caught: " + e.toString());
 	}
 
 	/** Initializes this program
@@ -275,6 +330,10 @@ public class WavPlay {
 				looped = true;
 			} else if (s.equalsIgnoreCase("debug")) {
 				debug = true;
+			} else if (s.toLowerCase().matches("lookahead=\\d{1,2}")) {
+				lookahead = Math.max(1, Integer.parseInt(s.substring(10)));
+			} else if (s.toLowerCase().matches("budget=\\d{1,6}")) {
+				budget = Long.parseLong(s.substring(7)) << 20;
 			}
 		}
 
@@ -284,5 +343,63 @@ public class WavPlay {
 		} else {
 			modal = new Modal("WavPlay", System.out, 2, true);
 		}
+
+		// make audio
+		audio = new GDMAudioEngine(lookahead + 2);
+
+		// configure audio
+		audio.setMapped(true);
+		audio.setReadAhead(1 << 20);
+
+		// looped tracks are loaded again on every pass
+		if (looped) {
+			audio.setCacheBudget(Runtime.getRuntime().maxMemory() / 4);
+		}
+	}
+
+
+	// helper classes
+
+	/** A {@code Track} is an audio track file being loaded ahead */
+	private static class Track {
+
+		/** Track number */
+		private final byte number;
+
+		/** Size of the track file in bytes */
+		private final long bytes;
+
+		/** Channel number the track loads to */
+		private final Future<Byte> channel;
+
+
+		/** Constructs a new instance of this class */
+		private Track(byte number, long bytes, Future<Byte> channel) {
+			this.number = number;
+			this.bytes = bytes;
+			this.channel = channel;
+		}
+
+
+		/** Waits for the track to load
+
+			@return     The channel number the track maps to, or a negative
+						number if it failed to load
+		*/
+		private byte await() {
+
+			try {
+				return channel.get();
+			} catch (ExecutionException e) {
+
+				modal.println(Modal.Mode.DEBUG,
+					"Exception caught: " + e.getCause().toString());
+
+				return -1;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return -1;
+			}
+		}
 	}
 }
\ No newline at end of file
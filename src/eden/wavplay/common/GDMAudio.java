@@ -1,6 +1,15 @@
 package eden.wavplay.common;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
@@ -15,33 +24,200 @@ import javax.sound.sampled.SourceDataLine;
 	support its {@code mark} and {@code reset} methods to make full use of this
 	class. This can be achieved by wrapping its underlying {@code InputStream}
 	to one that supports these methods, like a {@code BufferedInputStream}.
+	For files, a {@code GDMFileInputStream} or {@code GDMMappedInputStream}
+	does so without buffering the whole file on the heap.
+	<br><br>
+	A {@code GDMAudio} constructed without a line does not play on its own.
+	Instead, its audio data is pulled by a {@code GDMMixer} that renders it
+	together with other channels into a single line.
+	<br><br>
+	Playback moves through the states of {@code State} by atomic transitions,
+	so a pause issued from any thread is seen by the playing thread by its
+	next buffer at the latest.
+	<br><br>
+	With read-ahead, reading from the {@code AudioInputStream} is done on a
+	separate reader thread that fills a {@code GDMRingBuffer}, while playback
+	only ever takes from that buffer. A slow read then no longer delays writing
+	to the line as long as the buffer holds out.
+	<br><br>
+	Audio data of 16-bit signed PCM is metered as it is played, scaled by a
+	gain, and can be faded out when the channel is stolen by a
+	{@code GDMAudioEngine}.
+	<br><br>
+	A {@code GDMAudio} whose audio data is held once in a
+	{@code GDMSampleBuffer} may have any number of voices, each a
+	{@code GDMAudio} of its own reading the same audio data with a position
+	and gain of its own. Voices are paused and closed along with it.
 
 	@author     Brendon
 	@version    u0r0, 08/19/2017
 */
 public class GDMAudio implements Runnable {
 
-	/** Amount of audio data to be buffered in bytes */
+	/** Amount of audio data to be buffered in bytes, unless paced after a
+		target latency
+	*/
 	public static final int BUFFER_SIZE = 4096;
 
+	/** Time to wait for the other side of the read-ahead in nanoseconds */
+	private static final long PARK_NANOS = 500000;
+
+	/** Denotes that playback starts as soon as it is called */
+	private static final long NO_START = Long.MIN_VALUE;
+
+	/** Level reported of audio data that is not metered */
+	private static final int FULL_SCALE = 32768;
+
+
+	/** The {@code State} enum lists the states of playback */
+	public enum State {
+
+		/** Loaded, yet to be played */
+		LOADED,
+
+		/** Playing */
+		PLAYING,
+
+		/** Paused before reaching the end */
+		PAUSED,
+
+		/** Reached the end, rewound */
+		ENDED,
+
+		/** Resources released */
+		CLOSED
+	}
+
 
 	/** Audio resource to be read from upon playback */
 	private final AudioInputStream stream;
 
+	/** Held while the {@code AudioInputStream} is used. Once closed, the
+		stream is released by whoever holds this last
+	*/
+	private final ReentrantLock streamLock;
+
+	/** Denotes whether the {@code AudioInputStream} has been released.
+		Guarded by {@code streamLock}
+	*/
+	private boolean released;
+
 	/** Defines audio parameters */
 	private final AudioFormat format;
 
 	/** Temporary medium for data interchange */
 	private final byte[] buffer;
 
-	/** Data line to write audio data to */
-	private final SourceDataLine line;
+	/** Denotes whether audio data is 16-bit signed PCM, to be metered and
+		faded
+	*/
+	private final boolean shaped;
+
+	/** Data line to write audio data to, or null if mixed. Exchanged with
+		the successor on a gapless transition
+	*/
+	private volatile SourceDataLine line;
+
+	/** Paces writes to the line, or null. Exchanged along with the line */
+	private volatile GDMPacer pacer;
+
+	/** Channel to continue playback with once this one ends, or null */
+	private GDMAudio successor;
+
+	/** Denotes whether the successor has been taken, so that none is set
+		for the rest of this playback. Guarded by the monitor
+	*/
+	private boolean ending;
+
+	/** State of playback. Transitions are made under the monitor of this
+		{@code GDMAudio}, while reads need no lock
+	*/
+	private final AtomicReference<State> state;
+
+	/** Thread playing on the line, so that one left behind by a quick pause
+		and resume stops rather than writing alongside its successor. Null
+		once it has let go of the line
+	*/
+	private volatile Thread player;
+
+	/** Completes once the current or most recent playback ends */
+	private volatile CompletableFuture<Boolean> completion;
+
+	/** Read-ahead between the reader and playback, or null */
+	private GDMRingBuffer ring;
+
+	/** Executes the reader */
+	private Executor reader;
+
+	/** Temporary medium for the reader */
+	private byte[] chunk;
+
+	/** Offset of data in {@code chunk} yet to be put into the read-ahead */
+	private int chunkOffset;
+
+	/** End of data in {@code chunk} yet to be put into the read-ahead */
+	private int chunkLength;
+
+	/** Denotes whether the reader is active */
+	private volatile boolean reading;
+
+	/** Denotes whether the reader is to stop, as for a seek */
+	private volatile boolean halted;
+
+	/** Denotes whether playback has been repositioned since the last read.
+		Guarded by the lock of the reading side
+	*/
+	private boolean seeked;
+
+	/** Bytes read for playback since the first frame, moved along by seeks */
+	private volatile long position;
+
+	/** Denotes whether the read-ahead is being repositioned, during which
+		playback reads nothing rather than waiting on it
+	*/
+	private volatile boolean seeking;
+
+	/** Held while repositioning, so that one is done at a time */
+	private final Object seekLock;
+
+	/** Priority against being stolen, higher is kept longer */
+	private volatile int priority;
+
+	/** Time of loading or of the latest start, from {@code System.nanoTime} */
+	private volatile long since;
 
-	/** Reference to thread on which playback is being performed */
-	private Thread thread;
+	/** Peak of the latest audio data played */
+	private volatile int level;
 
-	/** Denotes whether playback is not paused */
-	private boolean running;
+	/** Length of the fade-out in frames */
+	private int fadeLength;
+
+	/** Frames left of the fade-out, 0 once faded out, or -1 if not fading.
+		Written once by the stealer and then by playback only
+	*/
+	private volatile int fadeLeft;
+
+	/** Factor audio data is scaled by */
+	private volatile float gain;
+
+	/** Audio data held once for voices to share, or null */
+	private volatile GDMSampleBuffer sample;
+
+	/** Voices playing the audio data of this {@code GDMAudio} */
+	private final Set<GDMAudio> voices;
+
+	/** Starts the line together with those of a group, or null */
+	private volatile GDMStartGate gate;
+
+	/** Time the next playback is to be heard, from {@code System.nanoTime},
+		or {@code NO_START}
+	*/
+	private volatile long startTime;
+
+	/** Number of times playback has started, telling a playback apart from
+		those before it
+	*/
+	private volatile long generation;
 
 
 	/** Constructs a new instance of this class with a given format and stream.
@@ -62,81 +238,152 @@ public class GDMAudio implements Runnable {
 	public GDMAudio(AudioInputStream stream, AudioFormat format)
 		throws LineUnavailableException, IOException {
 
+		this(stream, format, openLine(format), null);
+	}
+	/** Constructs a new instance of this class with a given format, stream,
+		line and pacer. If the line is null, playback is left to a
+		{@code GDMMixer}
+
+		@param      format
+					{@code AudioFormat} defining audio parameters
+
+		@param      stream
+					Audio resource to be read from upon playback
+
+		@param      line
+					Opened line to write audio data to, or null if mixed
+
+		@param      pacer
+					Sizes buffers and paces writes after a target latency, or
+					null to use {@code BUFFER_SIZE} and write as fast as the
+					line takes
+
+		@throws     IOException
+					If an input or output error occurs
+	*/
+	GDMAudio(AudioInputStream stream, AudioFormat format, SourceDataLine line,
+		GDMPacer pacer) throws IOException {
+
 		// stream
 		if (stream.markSupported()) {
 			stream.mark(stream.available());
 		}
 		this.stream = stream;
+		this.streamLock = new ReentrantLock();
 
 		// format
 		this.format = format;
 
 		// buffer
-		this.buffer = new byte[BUFFER_SIZE];
+		this.buffer =
+			new byte[(pacer != null) ? pacer.getChunkSize() : BUFFER_SIZE];
+
+		// shaped
+		this.shaped = AudioFormat.Encoding.PCM_SIGNED.equals(
+			format.getEncoding()) && (format.getSampleSizeInBits() == 16);
 
 		// line
-		this.line = AudioSystem.getSourceDataLine(format);
-		line.open();
+		this.line = line;
+
+		// pacer
+		this.pacer = pacer;
+
+		// completion
+		this.completion = CompletableFuture.completedFuture(false);
+
+		// state
+		this.state = new AtomicReference<>(State.LOADED);
+
+		// stealing
+		this.since = System.nanoTime();
+		this.fadeLeft = -1;
+
+		// voices
+		this.gain = 1;
+		this.voices = ConcurrentHashMap.newKeySet();
+
+		// startTime
+		this.startTime = NO_START;
+
+		// seeking
+		this.seekLock = new Object();
+
+		// generation
+		this.generation = 0;
 	}
 
 
-	/** Plays audio from its underlying {@code AudioInputStream} */
+	/** Plays audio from its underlying {@code AudioInputStream}, followed by
+		that of any successor on the same thread. Does nothing if this
+		{@code GDMAudio} has no line of its own
+	*/
 	@Override
 	public void run() {
+		GDMAudio audio = this;
 
-		try {
-			thread = Thread.currentThread();
-			running = true;
-			int bytes;
+		while (audio != null) {
+			audio = audio.play();
+		}
+	}
 
-			line.start();
+	/** Pauses playback. Effective only when playback is ongoing. Any
+		successor is dismissed and any voice is paused, which closes it. A
+		line of its own falls silent right away, and the playing thread lets
+		go within a buffer. A mixed channel leaves the mix on the next block,
+		and falls silent once the mix line plays out what it has queued
 
-			while (running && (stream.available() > 0) && !isClosed()) {
-				bytes = stream.read(buffer, 0, buffer.length);
-				line.write(buffer, 0, bytes);
-			}
+		@return     false if playback is not ongoing;
+					true otherwise
+	*/
+	public boolean stop() {
 
-			if (running) {
-				line.drain();
-				stop();
-				reset();
-			}
-		} catch (Exception e) {
+		for (GDMAudio voice : voices) {
+			voice.stop();
+		}
 
-			System.err.println("[GDMAudioEngine]\n  Thread "
-				+ Thread.currentThread().toString() + " caught exception: "
-				+ e.toString());
+		// stolen, not to be resumed
+		if (fadeLeft >= 0) {
+			return close();
 		}
-	}
+		final CompletableFuture<Boolean> done;
+
+		synchronized (this) {
+
+			if (!state.compareAndSet(State.PLAYING, State.PAUSED)) {
+				return false;
+			}
 
-	/** Pauses playback. Effective only when playback is ongoing */
-	public void stop() {
-		line.stop();
-		thread = null;
-		this.running = false;
+			// the line held now, as a hand-over is made under the monitor
+			if (line != null) {
+				line.stop();
+			}
+			successor = null;
+			done = completion;
+			notifyAll();
+		}
+		done.complete(false);
+		return true;
 	}
 
 	/** Resets playback marker to its starting point
 
 		@return     false if the operation was unsuccessful, in which case
 					the {@code AudioInputStream} does not support {@code mark}
-					and {@code reset};
+					and {@code reset}, or playback with read-ahead is ongoing;
 					true otherwise
 	*/
 	public boolean reset() {
 
-		try {
-			stream.reset();
-			stream.mark(stream.available());
-			return true;
-		} catch (Exception e) {
+		if ((ring != null) && (state.get() == State.PLAYING)) {
 			return false;
 		}
+		return rewind();
 	}
 
 	/** Skips playback marker by an amount of bytes
 
-		@return     false if the operation was unsuccessful;
+		@return     false if the operation was unsuccessful, in which case
+					playback with read-ahead may be ongoing;
 					true otherwise
 
 		@throw      IllegalArgumentException
@@ -147,40 +394,183 @@ public class GDMAudio implements Runnable {
 		if (bytes < 0) {
 			throw new IllegalArgumentException("Bad bytes: " + bytes);
 		}
+		final long requested = bytes;
 
 		try {
-			stream.skip(bytes);
+
+			if (ring != null) {
+
+				if (state.get() == State.PLAYING) {
+					return false;
+				}
+				awaitReader();
+				bytes -= ring.skip(bytes);
+				final long pending = Math.min(bytes, chunkLength - chunkOffset);
+				chunkOffset += pending;
+				bytes -= pending;
+			}
+
+			streamLock.lock();
+
+			try {
+				bytes -= stream.skip(bytes);
+			} finally {
+				unlockStream();
+			}
+			position += requested - bytes;
 			return true;
 		} catch (Exception e) {
 			return false;
 		}
 	}
 
-	/** Awaits for playback to end, then returns
+	/** Repositions playback marker to a frame, counted from the first frame
+		of the audio resource. Works forwards and backwards, also while playing,
+		in which case audio data already queued is discarded. Costs no reading
+		if the underlying {@code InputStream} skips without reading, as do
+		those of {@code GDMAudioEngine}. With read-ahead, playback reads
+		nothing while it is repositioned rather than waiting on it
+
+		@param      frame
+					Frame to play from. Seeking past the end ends playback
 
 		@return     false if the operation was unsuccessful, in which case
-					playback has ended; true otherwise
+					the {@code AudioInputStream} does not support {@code mark}
+					and {@code reset};
+					true otherwise
+
+		@throws     IllegalArgumentException
+					If {@code frame < 0}
 	*/
-	public boolean await() {
+	public boolean seek(long frame) {
+
+		if (frame < 0) {
+			throw new IllegalArgumentException("Bad frame: " + frame);
+		}
+
+		if (!stream.markSupported()) {
+			return false;
+		}
+		final int frameSize = Math.max(format.getFrameSize(), 1);
+		final long target = (frame > Long.MAX_VALUE / frameSize)
+			? Long.MAX_VALUE : frame * frameSize;
+		long bytes = target;
 
 		try {
-			if (thread != null) {
-				thread.join();
-				return true;
+			synchronized (seekLock) {
+				haltReader();
+
+				try {
+					streamLock.lock();
+
+					try {
+						stream.reset();
+
+						while (bytes > 0) {
+							final long skipped = stream.skip(bytes);
+
+							if (skipped <= 0) {
+								break;
+							}
+							bytes -= skipped;
+						}
+						position = target - bytes;
+
+						// read along with the new position, if read directly
+						if (ring == null) {
+							seeked = true;
+						}
+					} finally {
+						unlockStream();
+					}
+
+					if (ring != null) {
+
+						synchronized (ring) {
+							seeked = true;
+						}
+					}
+				} finally {
+					resumeReader();
+				}
 			}
-			return false;
+			return true;
 		} catch (Exception e) {
 			return false;
 		}
 	}
 
+	/** Repositions playback marker to a point in time, counted from the
+		start of the audio resource. See {@code seek}
+
+		@param      millis
+					Time to play from in milliseconds
+
+		@return     false if the operation was unsuccessful, in which case
+					the {@code AudioInputStream} does not support {@code mark}
+					and {@code reset}, or its frame rate is unknown;
+					true otherwise
+
+		@throws     IllegalArgumentException
+					If {@code millis < 0}
+	*/
+	public boolean seekMillis(long millis) {
+
+		if (millis < 0) {
+			throw new IllegalArgumentException("Bad millis: " + millis);
+		}
+		final float frameRate = format.getFrameRate();
+
+		if (frameRate <= 0) {
+			return false;
+		}
+		return seek((long) (millis * (double) frameRate / 1000));
+	}
+
+	/** Awaits for playback to end, then returns. This works regardless of
+		the thread playback is performed on, including pooled threads that do
+		not die and a {@code GDMMixer}
+
+		@return     false if the operation was unsuccessful, in which case
+					playback has ended; true otherwise
+	*/
+	public synchronized boolean await() {
+
+		if (state.get() != State.PLAYING) {
+			return false;
+		}
+
+		try {
+			while (state.get() == State.PLAYING) {
+				wait();
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/** Returns a {@code CompletableFuture} that completes once the current
+		or most recent playback ends, without a thread having to wait for it.
+		Dependent actions run on the thread that ends playback, which may be
+		the render thread of a {@code GDMMixer}, hence any slow action is best
+		attached with an asynchronous method
+
+		@return     {@code CompletableFuture} completing with true if playback
+					reached its end, or false if it was paused or closed
+	*/
+	public CompletableFuture<Boolean> whenEnded() {
+		return completion.thenApply(Function.identity());
+	}
+
 	/** Returns whether this {@code GDMAudio} is not playing
 
 		@return     true if the condition is true;
 					false otherwise
 	*/
 	public boolean isFree() {
-		return !running;
+		return state.get() != State.PLAYING;
 	}
 
 	/** Returns whether this {@code GDMAudio} is closed
@@ -189,23 +579,973 @@ public class GDMAudio implements Runnable {
 					false otherwise
 	*/
 	public boolean isClosed() {
-		return !line.isOpen();
+		final SourceDataLine current = line;
+		return (state.get() == State.CLOSED)
+			|| ((current != null) && !current.isOpen());
+	}
+
+	/** Returns the state of playback
+		@return     {@code State}
+	*/
+	public State getState() {
+		return state.get();
+	}
+
+	/** Returns the length of the audio resource
+
+		@return     Length in sample frames, or
+					{@code AudioSystem.NOT_SPECIFIED} if unknown
+	*/
+	public long getFrameLength() {
+		return stream.getFrameLength();
+	}
+
+	/** Returns the position of the playback marker, that is, the frame to be
+		read next for playback, counted from the first frame of the audio
+		resource. Audio data already queued in a line or the mix counts as
+		played
+
+		@return     Position in sample frames
+	*/
+	public long getFramePosition() {
+		return position / Math.max(format.getFrameSize(), 1);
+	}
+
+	/** Returns the {@code AudioFormat} of this {@code GDMAudio}
+		@return     {@code AudioFormat}
+	*/
+	public AudioFormat getFormat() {
+		return format;
 	}
 
 	/** Releases any system resource associated to
-		this {@code GDMAudio}
+		this {@code GDMAudio}. Never waits on a read in progress, in which
+		case the {@code AudioInputStream} is released once the read is done
 
 		@return     false if the operation was unsuccessful;
 					true otherwise
 	*/
 	public boolean close() {
+		final CompletableFuture<Boolean> done;
+
+		synchronized (this) {
+			state.set(State.CLOSED);
+			done = completion;
+			notifyAll();
+		}
+		done.complete(false);
+
+		for (GDMAudio voice : voices) {
+			voice.close();
+		}
 
 		try {
-			line.close();
-			stream.close();
+
+			if (line != null) {
+				line.close();
+			}
+			releaseStream();
 			return true;
 		} catch (Exception e) {
 			return false;
 		}
 	}
+
+	/** Marks playback as commenced. Used by {@code GDMAudioEngine} so that
+		{@code await} holds from the moment playback is called
+
+		@return     false if this {@code GDMAudio} is busy or closed;
+					true otherwise
+	*/
+	synchronized boolean start() {
+		State from;
+
+		do {
+			from = state.get();
+
+			if ((from == State.PLAYING) || (from == State.CLOSED)) {
+				return false;
+			}
+		} while (!state.compareAndSet(from, State.PLAYING));
+		completion = new CompletableFuture<>();
+		ending = false;
+		since = System.nanoTime();
+		generation++;
+
+		if (ring != null) {
+			startReader();
+		}
+		return true;
+	}
+
+	/** Fades playback out to be closed once silent, as when the channel is
+		stolen. Any successor is dismissed
+
+		@param      millis
+					Length of the fade-out in milliseconds
+
+		@return     false if this {@code GDMAudio} is not playing, its audio
+					data can not be faded, or it is already fading out, in
+					which case nothing is done;
+					true otherwise
+	*/
+	synchronized boolean fadeOut(int millis) {
+
+		if ((state.get() != State.PLAYING) || !shaped || (fadeLeft >= 0)) {
+			return false;
+		}
+		fadeLength =
+			Math.max((int) (format.getFrameRate() * millis / 1000), 1);
+
+		successor = null;
+		fadeLeft = fadeLength;
+		return true;
+	}
+
+	/** Returns whether this {@code GDMAudio} is fading out
+		@return     true if the condition is true;
+					false otherwise
+	*/
+	boolean isFading() {
+		return fadeLeft >= 0;
+	}
+
+	/** Returns the peak level of the latest audio data played
+
+		@return     0 if not playing;
+					32768 if the audio data is not metered;
+					otherwise returns the absolute peak of 16-bit samples
+	*/
+	int getLevel() {
+
+		if (state.get() != State.PLAYING) {
+			return 0;
+		}
+		return shaped ? level : FULL_SCALE;
+	}
+
+	/** Returns the time of loading or of the latest start
+		@return     Time from {@code System.nanoTime}
+	*/
+	long getSince() {
+		return since;
+	}
+
+	/** Sets the priority against being stolen
+		@param      priority
+					Priority, higher is kept longer
+	*/
+	void setPriority(int priority) {
+		this.priority = priority;
+	}
+
+	/** Returns the priority against being stolen
+		@return     Priority
+	*/
+	int getPriority() {
+		return priority;
+	}
+
+	/** Sets the factor audio data is scaled by. Effective only for 16-bit
+		signed PCM
+
+		@param      gain
+					Gain, 1 to leave audio data as is
+	*/
+	void setGain(float gain) {
+		this.gain = gain;
+	}
+
+	/** Joins a group whose lines are started together. The next playback
+		primes the line with its first audio data, then passes the gate
+		instead of starting the line on its own
+
+		@param      gate
+					{@code GDMStartGate} of the group
+	*/
+	void setGate(GDMStartGate gate) {
+		this.gate = gate;
+	}
+
+	/** Sets the time the next playback on a line of its own is to be heard.
+		The line is led in with silence up to it, so that timing is kept by
+		the line rather than by thread scheduling
+
+		@param      nanos
+					Time from {@code System.nanoTime}
+	*/
+	void setStartTime(long nanos) {
+		this.startTime = nanos;
+	}
+
+	/** Sets the audio data held once for voices to share
+
+		@param      sample
+					{@code GDMSampleBuffer} holding the audio data of this
+					{@code GDMAudio}
+	*/
+	void setSample(GDMSampleBuffer sample) {
+		this.sample = sample;
+	}
+
+	/** Returns the audio data held once for voices to share
+		@return     {@code GDMSampleBuffer}, or null
+	*/
+	GDMSampleBuffer getSample() {
+		return sample;
+	}
+
+	/** Returns the number of times playback has started, which changes with
+		every start, so that a playback can be told apart from the next
+		@return     Generation
+	*/
+	long getGeneration() {
+		return generation;
+	}
+
+	/** Adds a voice to be paused and closed along with this
+		{@code GDMAudio}
+
+		@param      voice
+					Voice to be added
+
+		@return     false if this {@code GDMAudio} is closed, in which case
+					nothing is added;
+					true otherwise
+	*/
+	synchronized boolean addVoice(GDMAudio voice) {
+
+		if (state.get() == State.CLOSED) {
+			return false;
+		}
+		voices.add(voice);
+		return true;
+	}
+
+	/** Removes a voice, as once it is closed
+
+		@param      voice
+					Voice to be removed
+	*/
+	void removeVoice(GDMAudio voice) {
+		voices.remove(voice);
+	}
+
+	/** Detaches the line from this {@code GDMAudio} so that it outlives it,
+		like when it is to be returned to a {@code GDMLinePool}. A line that
+		a playing thread has not let go of, as when paused mid-write, stays
+		attached to be closed along with this {@code GDMAudio}
+
+		@return     Detached line, or null if there is none or it is still
+					held by a playing thread
+	*/
+	synchronized SourceDataLine detach() {
+
+		if (player != null) {
+			return null;
+		}
+		final SourceDataLine out = line;
+		line = null;
+		return out;
+	}
+
+	/** Sets the channel to continue playback with once this one ends
+
+		@param      next
+					Channel to be played next
+
+		@return     false if this {@code GDMAudio} is not playing or is
+					already ending, in which case nothing is set;
+					true otherwise
+	*/
+	synchronized boolean setSuccessor(GDMAudio next) {
+
+		if ((state.get() != State.PLAYING) || ending) {
+			return false;
+		}
+		successor = next;
+		return true;
+	}
+
+	/** Takes the channel to continue playback with, clearing it. From then
+		on, this playback is ending and no successor is set
+		@return     Successor, or null
+	*/
+	synchronized GDMAudio takeSuccessor() {
+		final GDMAudio out = successor;
+		successor = null;
+		ending = true;
+		return out;
+	}
+
+	/** Enables read-ahead through a ring buffer of a given capacity. The
+		reader is started right away to fill it ahead of playback
+
+		@param      capacity
+					Minimum capacity of the ring buffer in bytes
+
+		@param      executor
+					Executes the reader
+	*/
+	synchronized void setReadAhead(int capacity, Executor executor) {
+		this.ring = new GDMRingBuffer(Math.max(capacity, 2 * buffer.length));
+		this.reader = executor;
+		this.chunk = new byte[buffer.length];
+		startReader();
+	}
+
+	/** Reads audio data for playback, shaped for the mix. With read-ahead,
+		this never blocks and only whole frames are read. Otherwise, it blocks
+		until the requested amount is read or the end of stream is reached
+
+		@param      b
+					Buffer to read into
+
+		@param      off
+					Offset in the buffer to read into
+
+		@param      len
+					Number of bytes to read
+
+		@return     Number of bytes read, which may be 0 if the read-ahead
+					runs dry; -1 if the end of stream is reached
+	*/
+	int read(byte[] b, int off, int len) {
+		final int out = fetch(b, off, len);
+
+		if (out <= 0) {
+			return out;
+		}
+		final int bytes = shape(b, off, out);
+		return (bytes > 0) ? bytes : -1;
+	}
+
+	/** Ends playback that has reached its end of stream. Rewinds to the
+		starting point and releases any thread awaiting for it
+	*/
+	void end() {
+
+		// stolen, not to be played again
+		if (fadeLeft == 0) {
+			close();
+			return;
+		}
+		rewind();
+		final CompletableFuture<Boolean> done;
+
+		synchronized (this) {
+
+			successor = null;
+
+			// paused or closed meanwhile
+			if (!state.compareAndSet(State.PLAYING, State.ENDED)) {
+				return;
+			}
+			done = completion;
+			notifyAll();
+		}
+		done.complete(true);
+	}
+
+
+	/** Plays audio from its underlying {@code AudioInputStream} once. On
+		reaching its end, a successor of the same format takes over the running
+		line without it being drained, stopped or restarted. A successor of
+		another format starts on its own line right after this one drains
+
+		@return     Successor to be played next on the current thread, or null
+	*/
+	private GDMAudio play() {
+
+		if (line == null) {
+			return null;
+		}
+
+		try {
+			synchronized (this) {
+
+				// when run directly rather than started by the engine
+				if ((state.get() != State.PLAYING) && !start()) {
+					return null;
+				}
+				player = Thread.currentThread();
+			}
+			int bytes;
+
+			// a group starts its lines together once primed
+			if (gate == null) {
+				line.start();
+			}
+
+			if (pacer != null) {
+				pacer.unprime();
+			}
+			final long at = startTime;
+
+			if (at != NO_START) {
+				startTime = NO_START;
+				lead(at);
+			}
+
+			if (ring != null) {
+
+				// only ever takes from the read-ahead
+				while (isPlayer() && (fadeLeft != 0) && !isClosed()) {
+
+					synchronized (ring) {
+						bytes = fetch(buffer, 0, buffer.length);
+
+						if (seeked) {
+							seeked = false;
+							flush();
+						}
+					}
+
+					if (bytes < 0) {
+						break;
+					} else if (bytes == 0) {
+						LockSupport.parkNanos(PARK_NANOS);
+					} else {
+						write(bytes);
+					}
+				}
+			} else {
+				final int frameSize = format.getFrameSize();
+				int filled = 0;
+
+				// driven by read results, as available() may be 0 before EOF
+				while (isPlayer() && (fadeLeft != 0) && !isClosed()) {
+
+					streamLock.lock();
+
+					try {
+
+						// any partial frame predates the seek
+						if (seeked) {
+							seeked = false;
+							filled = 0;
+							flush();
+						}
+						bytes =
+							stream.read(buffer, filled, buffer.length - filled);
+
+						if (bytes > 0) {
+							position += bytes;
+						}
+					} finally {
+						unlockStream();
+					}
+
+					if (bytes < 0) {
+						break;
+					}
+					filled += bytes;
+					bytes = filled - filled % frameSize;
+
+					if (bytes > 0) {
+						write(bytes);
+
+						// carries over any partial frame
+						filled -= bytes;
+						System.arraycopy(buffer, bytes, buffer, 0, filled);
+					}
+				}
+			}
+
+			// nothing was written, yet the group is not to wait for it
+			passGate(null);
+
+			if (isPlayer()) {
+				GDMAudio next = takeSuccessor();
+
+				if ((next != null) && !next.start()) {
+					next = null;
+				}
+
+				if ((next != null) && (next.line != null)
+					&& format.matches(next.format)) {
+
+					// paused meanwhile, which dismisses the successor
+					if (!handOver(next)) {
+						next.stop();
+						return null;
+					}
+					letGo();
+					end();
+					return next;
+				}
+				line.drain();
+				line.stop();
+				letGo();
+				end();
+				return next;
+			}
+		} catch (Exception e) {
+
+			System.err.println("[GDMAudioEngine]\n  Thread "
+				+ Thread.currentThread().toString() + " caught exception: "
+				+ e.toString());
+		} finally {
+			letGo();
+		}
+		return null;
+	}
+
+	/** Hands the running line over to the successor for a gapless
+		transition, unless playback has been paused meanwhile. Made under the
+		monitors of both, so that neither stops a line the other holds
+
+		@param      next
+					Successor to continue on the line
+
+		@return     false if playback has been paused, in which case nothing
+					is handed over;
+					true otherwise
+	*/
+	private boolean handOver(GDMAudio next) {
+
+		synchronized (this) {
+
+			if (state.get() != State.PLAYING) {
+				return false;
+			}
+
+			synchronized (next) {
+				final SourceDataLine current = line;
+				final GDMPacer paced = pacer;
+				line = next.line;
+				pacer = next.pacer;
+				next.line = current;
+				next.pacer = paced;
+			}
+		}
+		return true;
+	}
+
+	/** Lets go of the line, unless another thread took over, so that it may
+		be detached once playback is done with it
+	*/
+	private synchronized void letGo() {
+
+		if (player == Thread.currentThread()) {
+			player = null;
+		}
+	}
+
+	/** Returns whether playback is ongoing on the current thread
+
+		@return     true if the condition is true;
+					false otherwise
+	*/
+	private boolean isPlayer() {
+		return (state.get() == State.PLAYING)
+			&& (player == Thread.currentThread());
+	}
+
+	/** Reads audio data as it is, to be shaped by whoever plays it. With
+		read-ahead, this never blocks and only whole frames are read.
+		Otherwise, it blocks until the requested amount is read or the end of
+		stream is reached
+
+		@param      b
+					Buffer to read into
+
+		@param      off
+					Offset in the buffer to read into
+
+		@param      len
+					Number of bytes to read
+
+		@return     Number of bytes read, which may be 0 if the read-ahead
+					runs dry; -1 if the end of stream is reached
+	*/
+	private int fetch(byte[] b, int off, int len) {
+
+		// faded out, as good as the end of stream
+		if (fadeLeft == 0) {
+			return -1;
+		}
+
+		if (ring != null) {
+
+			// being repositioned, as good as running dry
+			if (seeking) {
+				return 0;
+			}
+
+			synchronized (ring) {
+
+				if (seeking) {
+					return 0;
+				}
+
+				// refilled in one go below the low-water mark, not per read
+				if (!reading && (ring.size() < ring.capacity() / 2)) {
+					startReader();
+				}
+				final int frameSize = format.getFrameSize();
+				int bytes = Math.min(len, ring.size());
+				bytes -= bytes % frameSize;
+
+				if (bytes > 0) {
+					bytes = ring.poll(b, off, bytes);
+					position += bytes;
+					return bytes;
+				}
+
+				// a trailing partial frame is never played
+				return (ring.isFinished() && (ring.size() < frameSize))
+					? -1 : 0;
+			}
+		}
+		int out = 0;
+		streamLock.lock();
+
+		try {
+			while (out < len) {
+				final int bytes = stream.read(b, off + out, len - out);
+
+				if (bytes < 0) {
+					break;
+				}
+				out += bytes;
+			}
+		} catch (IOException e) {
+			// treated as end of stream
+		} finally {
+			position += out;
+			unlockStream();
+		}
+		return ((out == 0) && (len > 0)) ? -1 : out;
+	}
+
+	/** Writes audio data to the line, paced if there is a pacer
+
+		@param      bytes
+					Number of bytes in the buffer to be written
+	*/
+	private void write(int bytes) {
+		bytes = shape(buffer, 0, bytes);
+		final GDMPacer paced = pacer;
+
+		if (paced != null) {
+			paced.pace(line);
+		}
+		line.write(buffer, 0, bytes);
+		passGate(line);
+	}
+
+	/** Writes silence up to a point in time, so that the audio data written
+		next is heard on it
+
+		@param      at
+					Time from {@code System.nanoTime}
+	*/
+	private void lead(long at) {
+		final int frameSize = Math.max(format.getFrameSize(), 1);
+		final int sampleSize = Math.max(frameSize / format.getChannels(), 1);
+
+		long bytes = (long) ((at - System.nanoTime())
+			* (double) format.getFrameRate() / 1000000000) * frameSize;
+
+		Arrays.fill(buffer, (byte) 0);
+
+		// unsigned silence sits at half scale
+		if (AudioFormat.Encoding.PCM_UNSIGNED.equals(format.getEncoding())) {
+			final int msb = format.isBigEndian() ? 0 : sampleSize - 1;
+
+			for (int j = msb; j < buffer.length; j += sampleSize) {
+				buffer[j] = (byte) 0x80;
+			}
+		}
+		final int chunk = buffer.length - buffer.length % frameSize;
+
+		while ((bytes > 0) && isPlayer()) {
+			final int length = (int) Math.min(chunk, bytes);
+			write(length);
+			bytes -= length;
+		}
+	}
+
+	/** Passes the gate of a group, if any, once
+
+		@param      primed
+					Line primed with audio data, or null if there is none
+	*/
+	private void passGate(SourceDataLine primed) {
+		final GDMStartGate joined = gate;
+
+		if (joined != null) {
+			gate = null;
+			joined.arrive(primed);
+		}
+	}
+
+	/** Meters audio data about to be played and applies the gain and any
+		fade-out. Does nothing unless the audio data is 16-bit signed PCM
+
+		@param      b
+					Buffer holding the audio data
+
+		@param      off
+					Offset of the audio data in the buffer
+
+		@param      len
+					Number of bytes of audio data
+
+		@return     Number of bytes to be played, less than {@code len} if
+					the fade-out ends within
+	*/
+	private int shape(byte[] b, int off, int len) {
+
+		if (!shaped) {
+			return len;
+		}
+		final boolean bigEndian = format.isBigEndian();
+		final int channels = Math.max(format.getChannels(), 1);
+		final int end = off + len - 1;
+		final float g = gain;
+		int left = fadeLeft;
+		final boolean scaled = (left >= 0) || (g != 1);
+		int peak = 0;
+
+		for (int j = off, k = 1; j < end; j += 2, k++) {
+			int sample = bigEndian ? (b[j] << 8) | (b[j + 1] & 0xFF)
+				: (b[j + 1] << 8) | (b[j] & 0xFF);
+
+			if (scaled) {
+
+				// the rest is silent
+				if (left == 0) {
+					len = j - off;
+					break;
+				}
+
+				if (g != 1) {
+					sample = Math.max(Short.MIN_VALUE,
+						Math.min(Short.MAX_VALUE, Math.round(sample * g)));
+				}
+
+				if (left > 0) {
+					sample = (int) ((long) sample * left / fadeLength);
+				}
+
+				if (bigEndian) {
+					b[j] = (byte) (sample >> 8);
+					b[j + 1] = (byte) sample;
+				} else {
+					b[j] = (byte) sample;
+					b[j + 1] = (byte) (sample >> 8);
+				}
+
+				if ((left > 0) && (k % channels == 0)) {
+					left--;
+				}
+			}
+			peak = Math.max(peak, Math.abs(sample));
+		}
+
+		if (left >= 0) {
+			fadeLeft = left;
+		}
+		level = peak;
+		return len;
+	}
+
+	/** Discards audio data queued in the line, as after a seek */
+	private void flush() {
+		line.flush();
+
+		if (pacer != null) {
+			pacer.unprime();
+		}
+	}
+
+	/** Rewinds to the starting point, emptying any read-ahead
+
+		@return     false if the operation was unsuccessful;
+					true otherwise
+	*/
+	private boolean rewind() {
+
+		try {
+			synchronized (seekLock) {
+				haltReader();
+
+				try {
+					streamLock.lock();
+
+					try {
+						stream.reset();
+						stream.mark(stream.available());
+						position = 0;
+					} finally {
+						unlockStream();
+					}
+				} finally {
+					resumeReader();
+				}
+			}
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/** Lets go of the {@code AudioInputStream}, releasing it if this
+		{@code GDMAudio} has been closed meanwhile
+	*/
+	private void unlockStream() {
+		streamLock.unlock();
+		releaseStream();
+	}
+
+	/** Releases the {@code AudioInputStream} once this {@code GDMAudio} is
+		closed. Does nothing while the stream is in use, as whoever uses it
+		releases it on letting go
+	*/
+	private void releaseStream() {
+
+		if (!isClosed() || !streamLock.tryLock()) {
+			return;
+		}
+
+		try {
+			if (!released) {
+				released = true;
+				stream.close();
+			}
+		} catch (IOException e) {
+			// nothing is left to be read
+		} finally {
+			streamLock.unlock();
+		}
+	}
+
+	/** Stops the reader, if there is a read-ahead, for the
+		{@code AudioInputStream} to be repositioned. Playback reads nothing
+		until the reader is resumed, yet never waits on it. Called with the
+		seek lock held
+	*/
+	private void haltReader() {
+
+		if (ring != null) {
+			seeking = true;
+			halted = true;
+			awaitReader();
+		}
+	}
+
+	/** Empties the read-ahead and resumes the reader stopped by
+		{@code haltReader}. Called with the seek lock held
+	*/
+	private void resumeReader() {
+
+		if (ring != null) {
+
+			synchronized (ring) {
+				ring.clear();
+				chunkOffset = chunkLength = 0;
+			}
+			halted = false;
+			seeking = false;
+			startReader();
+		}
+	}
+
+	/** Starts the reader unless it is already active or has nothing left to
+		read
+	*/
+	private synchronized void startReader() {
+
+		if (!reading && (state.get() != State.CLOSED) && !ring.isFinished()) {
+			reading = true;
+			reader.execute(this::fill);
+		}
+	}
+
+	/** Awaits for the reader to become inactive, then returns */
+	private synchronized void awaitReader() {
+		boolean interrupted = false;
+
+		while (reading) {
+
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Fills the read-ahead from the {@code AudioInputStream}. Runs on the
+		reader until the end of stream, or until the read-ahead is full, so
+		that no thread is held while waiting for room; playback starts it
+		again once it has drained to half. Data that does not fit is kept for the next time
+		the reader is started
+	*/
+	private void fill() {
+
+		try {
+			while ((state.get() != State.CLOSED) && !halted) {
+
+				if (chunkOffset == chunkLength) {
+					final int bytes;
+
+					streamLock.lock();
+
+					try {
+						bytes = stream.read(chunk, 0, chunk.length);
+					} finally {
+						unlockStream();
+					}
+
+					if (bytes < 0) {
+						ring.finish();
+						break;
+					}
+					chunkOffset = 0;
+					chunkLength = bytes;
+				}
+				final int bytes =
+					ring.offer(chunk, chunkOffset, chunkLength - chunkOffset);
+
+				// full, resumed by playback below the low-water mark
+				if (bytes == 0) {
+					break;
+				}
+				chunkOffset += bytes;
+			}
+		} catch (IOException e) {
+			ring.finish();
+		} finally {
+
+			synchronized (this) {
+				reading = false;
+				notifyAll();
+			}
+		}
+	}
+
+	/** Obtains and opens a line for a given format
+
+		@param      format
+					{@code AudioFormat} defining audio parameters
+
+		@return     Opened line
+
+		@throws     LineUnavailableException
+					If a line can not be opened because it is unavailable
+	*/
+	private static SourceDataLine openLine(AudioFormat format)
+		throws LineUnavailableException {
+
+		final SourceDataLine out = AudioSystem.getSourceDataLine(format);
+		out.open();
+		return out;
+	}
 }
\ No newline at end of file
@@ -2,18 +2,35 @@ package eden.wavplay.common;
 
 import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
 /** The {@code GDMAudioEngine} class is a simple audio engine that provides the
@@ -27,6 +44,22 @@ import javax.sound.sampled.UnsupportedAudioFileException;
 	and returns its identification for later reference. Custom mapping may be a
 	feature to be considered in a future release.
 	<br><br>
+	In mixer mode, all channels are rendered by a single {@code GDMMixer} into
+	one line instead of each opening a line and thread of their own. It is
+	the only mode in which the number of threads does not grow with the
+	number of channels playing. Audio resources are converted to the mix
+	format on load. Calls for playback are
+	then posted to the render thread, which applies them between blocks in the
+	order they were made.
+	<br><br>
+	A sample is an audio file loaded onto a channel with its decoded audio data
+	held once in memory. Any number of voices of it may play at once, each
+	costing an object rather than a load.
+	<br><br>
+	When no channel is free, a load fails unless a {@code GDMStealPolicy} is
+	set, in which case a busy channel is faded out and taken over under a
+	new number.
+	<br><br>
 	For mutual conclusions, it is suggested to invoke the {@code unloadAll}
 	method before program shutdown.
 
@@ -35,38 +68,158 @@ import javax.sound.sampled.UnsupportedAudioFileException;
 */
 public class GDMAudioEngine {
 
+	// class constants
+
+	/** Priority of channels loaded without one */
+	public static final int DEFAULT_PRIORITY = 0;
+
+	/** Length of the fade-out of a stolen channel in milliseconds */
+	public static final int STEAL_FADE_MILLIS = 10;
+
+	/** Most threads to load on at once, and to read ahead on at once,
+		unless virtual threads are enabled
+	*/
+	public static final int IO_THREADS = 4;
+
+	/** Read-ahead per channel in bytes by default in mixer mode, so that the
+		render thread never waits on reading an audio resource
+	*/
+	public static final int MIX_READ_AHEAD = 1 << 16;
+
+
 	// instance constants
 
 	/** An array of audio channels */
 	private final GDMAudio[] channels;
 
-	// added in r1
-	/** A dummy array of futures */
-	private final Future[] futures;
+	/** Hands out free channel numbers */
+	private final GDMChannelAllocator allocator;
 
 	/** Threads to play audio on */
 	private final ThreadPoolExecutor pool;
 
+	/** Bounded threads to load on, so that a burst of loads does not spawn
+		a thread each
+	*/
+	private final ThreadPoolExecutor ioPool;
+
+	/** Bounded threads to read ahead on, apart from loads so that a load
+		reading a whole file never holds back a read-ahead
+	*/
+	private final ThreadPoolExecutor readerPool;
+
+	/** Mix format in mixer mode, or null */
+	private final AudioFormat mixFormat;
+
+	/** Opened lines kept for reuse */
+	private final GDMLinePool linePool;
+
+	/** Counts the times a line was found to have run dry */
+	private final AtomicLong underruns;
+
+	/** Decoded audio data of files kept for repeated loads */
+	private final GDMPcmCache cache;
+
+	/** Counts the channels stolen. Its monitor is held while a channel is
+		stolen or closed
+	*/
+	private final AtomicLong stolen;
+
+	/** Times each channel has been stolen, which tells the numbers handed out
+		for it before a steal from those after
+	*/
+	private final AtomicIntegerArray generations;
+
+
+	// instance variables
+
+	/** Whether audio files are loaded through memory mapping */
+	private volatile boolean mapped;
+
+	/** Whether audio resources are loaded into off-heap memory */
+	private volatile boolean offHeap;
+
+	/** Read-ahead per channel in bytes, or 0 */
+	private volatile int readAhead;
+
+	/** Target latency in milliseconds, or 0 */
+	private volatile int latency;
+
+	/** Threads to load on, either {@code ioPool} or virtual threads */
+	private volatile ExecutorService io;
+
+	/** Threads to read ahead on, either {@code readerPool} or virtual
+		threads
+	*/
+	private volatile ExecutorService readers;
+
+	/** Most loads of a batch to run at once */
+	private volatile int loadConcurrency;
+
+	/** Renders all channels in mixer mode, opened on first load */
+	private volatile GDMMixer mixer;
+
+	/** How a busy channel is taken over when none is free */
+	private volatile GDMStealPolicy stealPolicy;
+
 
 	// constructors
 
-	/** Constructs an instance of this class with a given number of channels and
-		buffer size
+	/** Constructs an instance of this class with a given number of channels.
+		Each channel plays on a line and thread of its own. Up to as many
+		opened lines as there are channels are kept for reuse
 
 		@param      channels
 					Number of audio channels to be made available
-
-		@param      bufferSize
-					Amount of audio data per channel to be buffered in bytes
 	*/
 	public GDMAudioEngine(int channels) {
-		this.channels = new GDMAudio[channels];
+		this(channels, null);
+	}
+	/** Constructs an instance of this class in mixer mode with a given number
+		of channels and mix format. All channels are rendered into one line on
+		one thread. Read-ahead is set to {@code MIX_READ_AHEAD}, so that
+		rendering never reads from an audio resource itself
+
+		@param      channels
+					Number of audio channels to be made available
+
+		@param      mixFormat
+					16-bit signed PCM {@code AudioFormat} to mix in, or null to
+					construct without mixer mode
+
+		@throws     IllegalArgumentException
+					If the mix format is not 16-bit signed PCM
+	*/
+	public GDMAudioEngine(int channels, AudioFormat mixFormat) {
 
-		// added in r1
-		this.futures = new Future[channels];
+		if ((mixFormat != null) && (!AudioFormat.Encoding.PCM_SIGNED.equals(
+			mixFormat.getEncoding()) || (mixFormat.getSampleSizeInBits() != 16))) {
 
+			throw new IllegalArgumentException("Bad mix format: " + mixFormat);
+		}
+		this.channels = new GDMAudio[channels];
+		this.allocator = new GDMChannelAllocator(channels);
+		this.mixFormat = mixFormat;
+		this.linePool = new GDMLinePool(channels);
+		this.underruns = new AtomicLong();
+		this.cache = new GDMPcmCache(0);
 		this.pool = (ThreadPoolExecutor)
 			Executors.newCachedThreadPool(GDMThreadFactory.getInstance());
+		this.ioPool = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 60,
+			TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+			GDMThreadFactory.getInstance());
+		this.ioPool.allowCoreThreadTimeOut(true);
+		this.io = ioPool;
+		this.readerPool = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 60,
+			TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+			GDMThreadFactory.getInstance());
+		this.readerPool.allowCoreThreadTimeOut(true);
+		this.readers = readerPool;
+		this.loadConcurrency = Runtime.getRuntime().availableProcessors();
+		this.readAhead = (mixFormat != null) ? MIX_READ_AHEAD : 0;
+		this.stolen = new AtomicLong();
+		this.generations = new AtomicIntegerArray(channels);
+		this.stealPolicy = GDMStealPolicy.NONE;
 	}
 
 
@@ -126,10 +279,119 @@ public class GDMAudioEngine {
 		IllegalStateException,
 		LineUnavailableException
 	{
-		return makeChannel(AudioSystem.getAudioInputStream(
-				new BufferedInputStream(new FileInputStream(file))),
-			AudioSystem.getAudioFileFormat(file).getFormat());
+		return load(file, DEFAULT_PRIORITY);
+	}
+	/** Loads an audio file at a given priority against being stolen. If no
+		channel is free, one of no higher priority may be stolen after the
+		steal policy
+
+		@param      file
+					File to be loaded
+
+		@param      priority
+					Priority, higher is kept longer
+
+		@return     Channel number to which this audio resource is mapped
+
+		@throws     IOException
+					If an I/O exception occurs
+
+		@throws     UnsupportedAudioFileException
+					If the audio resource does not contain valid data of a
+					recognized file type and format
+
+		@throws     IllegalStateException
+					If there are no free channels available for use and none
+					may be stolen
+
+		@throws     LineUnavailableException
+					If a line can not be opened because it is unavailable
+	*/
+	public int load(File file, int priority) throws
+		IOException,
+		UnsupportedAudioFileException,
+		IllegalStateException,
+		LineUnavailableException
+	{
+		AudioInputStream stream = null;
+
+		if (cache.getBudget() > 0) {
+			stream = cache.open(file);
+
+			if (stream == null) {
+				stream = cacheFile(file, openFile(file));
+			}
+		} else {
+			stream = openFile(file);
+		}
+		return makeChannel(stream, stream.getFormat(), priority);
+	}
+	/** Loads an audio file as a sample. Its audio data is decoded into
+		memory, in the mix format in mixer mode, and held once for the channel
+		and all voices started by {@code playVoice} to share. It is released
+		once the channel is unloaded and its last voice ends
+
+		@param      file
+					File to be loaded
+
+		@return     Channel number to which this audio resource is mapped
+
+		@throws     IOException
+					If an I/O exception occurs
+
+		@throws     UnsupportedAudioFileException
+					If the audio resource does not contain valid data of a
+					recognized file type and format, or its length is unknown
+
+		@throws     IllegalStateException
+					If there are no free channels available for use
+
+		@throws     LineUnavailableException
+					If a line can not be opened because it is unavailable
+	*/
+	public int loadSample(File file) throws
+		IOException,
+		UnsupportedAudioFileException,
+		IllegalStateException,
+		LineUnavailableException
+	{
+		AudioInputStream stream = decode(openFile(file));
+
+		try {
+			if (mixFormat != null) {
+				stream = toMixFormat(stream, stream.getFormat());
+			}
+
+			if (stream.getFrameLength() == AudioSystem.NOT_SPECIFIED) {
+				throw new UnsupportedAudioFileException(
+					"Unknown length: " + file);
+			}
+		} catch (UnsupportedAudioFileException | RuntimeException e) {
+			stream.close();
+			throw e;
+		}
+		final AudioFormat format = stream.getFormat();
+		final GDMSampleBuffer data = store(stream);
+		final InputStream reader = data.open();
+
+		// released once the channel and its voices are closed
+		data.free();
+
+		try {
+			final int out = makeChannel(new AudioInputStream(reader, format,
+				data.length() / format.getFrameSize()), format,
+				DEFAULT_PRIORITY);
+
+			audioOf(out).setSample(data);
+			return out;
+		} catch (IOException | UnsupportedAudioFileException
+			| LineUnavailableException | RuntimeException e) {
+
+			reader.close();
+			throw e;
+		}
 	}
+
 	/** Loads an audio resource whose path is specified by a URL
 
 		@param      url
@@ -156,9 +418,10 @@ public class GDMAudioEngine {
 		IllegalStateException,
 		LineUnavailableException
 	{
-		return makeChannel(AudioSystem.getAudioInputStream(
-				new BufferedInputStream(url.openStream())),
-			AudioSystem.getAudioFileFormat(url).getFormat());
+		final AudioInputStream stream = offHeap(openStream(
+			new BufferedInputStream(url.openStream()), true));
+
+		return makeChannel(stream, stream.getFormat(), DEFAULT_PRIORITY);
 	}
 	/** Loads audio data from an {@code InputStream}. This allows for continuous
 		playback as long as the {@code InputStream} is open and/or has data
@@ -187,212 +450,1817 @@ public class GDMAudioEngine {
 		IllegalStateException,
 		LineUnavailableException
 	{
-		return makeChannel(AudioSystem.getAudioInputStream(
-				new BufferedInputStream(stream)),
-			AudioSystem.getAudioFileFormat(stream).getFormat());
-	}
+		final AudioInputStream in =
+			offHeap(openStream(new BufferedInputStream(stream), false));
 
-	/** Calls an audio channel for playback on a background thread. If the
-		specified channel is busy this method does nothing
+		return makeChannel(in, in.getFormat(), DEFAULT_PRIORITY);
+	}
 
-		@param      channel
-					Channel number to be called
+	/** Loads an audio file in the background on the I/O threads, at most
+		{@code IO_THREADS} at once, or on virtual threads if enabled. The
+		load fails with the exceptions of
+		{@code load}. Cancelling before the load finishes unloads the channel
 
-		@return     {@code false} if the operation was not commenced;
-					{@code true} otherwise
+		@param      path
+					Path to file to be loaded
 
-		@throws     IllegalArgumentException
-					If the channel number is invalid
+		@return     {@code CompletableFuture} of the channel number to which
+					this audio resource is mapped
 	*/
-	public boolean play(int channel) throws IllegalArgumentException {
+	public CompletableFuture<Integer> loadAsync(Path path) {
+		return loadAsync(path, DEFAULT_PRIORITY);
+	}
+	/** Loads an audio file at a given priority in the background. See
+		{@code load(File, int)} and {@code loadAsync(Path)}
 
-		if (!isValidChannel(channel)) {
-			throw new IllegalArgumentException("Bad channel: " + channel);
-		}
+		@param      path
+					Path to file to be loaded
 
-		if (channels[channel].isFree()) {
-			futures[channel] = pool.submit(channels[channel]);
-			return true;
-		}
-		return false;
-	}
+		@param      priority
+					Priority, higher is kept longer
 
-	/** Calls an audio channel for playback on the current thread. If the
-		specified channel is busy, this method does nothing
+		@return     {@code CompletableFuture} of the channel number to which
+					this audio resource is mapped
+	*/
+	public CompletableFuture<Integer> loadAsync(Path path, int priority) {
+		return loadAsync(() -> load(path.toFile(), priority));
+	}
 
-		@param      channel
-					Channel number to be called
+	/** Loads an audio resource whose path is specified by a URL in the
+		background. See {@code loadAsync(Path)}
 
-		@return     {@code false} if the operation was not commenced;
-					{@code true} otherwise
+		@param      url
+					URL to audio resource to be loaded
 
-		@throws     IllegalArgumentException
-					If the channel number is invalid
+		@return     {@code CompletableFuture} of the channel number to which
+					this audio resource is mapped
 	*/
-	public boolean playAndAwait(int channel) throws IllegalArgumentException {
+	public CompletableFuture<Integer> loadAsync(URL url) {
+		return loadAsync(() -> load(url));
+	}
 
-		if (!isValidChannel(channel)) {
-			throw new IllegalArgumentException("Bad channel: " + channel);
-		}
+	/** Loads audio data from an {@code InputStream} in the background. See
+		{@code loadAsync(Path)}
 
-		if (channels[channel].isFree()) {
-			channels[channel].run();
-			return true;
-		}
-		return false;
+		@param      stream
+					{@code InputStream} containing audio data to be loaded
+
+		@return     {@code CompletableFuture} of the channel number to which
+					this audio resource is mapped
+	*/
+	public CompletableFuture<Integer> loadAsync(InputStream stream) {
+		return loadAsync(() -> load(stream));
 	}
 
-	/** Awaits for a channel to end playback, then returns
+	/** Loads a batch of audio files in parallel on a fork/join pool. Headers
+		are parsed, validated and audio data staged for several files at once,
+		up to the load concurrency. A file that fails to load does not affect
+		the others, even when staging its audio data runs out of memory. If
+		the batch fails as a whole, any channel it loaded is unloaded
 
-		@return     false if the operation was unsuccessful;
-					true otherwise
+		@param      paths
+					Paths to files to be loaded
 
-		@throws     IllegalArgumentException
-					If the channel number is invalid
+		@return     {@code GDMLoadResult} mapping each file, in the order
+					given, to its channel number or the exception its load
+					failed with
 	*/
-	public boolean await(int channel) throws IllegalArgumentException {
-
-		/*  r1: in r0, if playback is handled by a thread in pool, this method
-			does not return as such threads do not die after execution. This has
-			been fixed with the use of Future
-		*/
+	public GDMLoadResult loadAll(Collection<Path> paths) {
+		final Path[] in = paths.toArray(new Path[0]);
+		final GDMLoadResult out = new GDMLoadResult(in.length);
 
-		if (!isValidChannel(channel)) {
-			throw new IllegalArgumentException("Bad channel: " + channel);
+		if (in.length == 0) {
+			return out;
 		}
+		final ForkJoinPool loader =
+			new ForkJoinPool(Math.min(loadConcurrency, in.length));
 
 		try {
-			futures[channel].get();
-			return true;
-		} catch (Exception e) {
-			return false;
+			loader.invoke(new LoadTask(in, out, 0, in.length));
+		} catch (RuntimeException | Error e) {
+
+			// the mapping is lost to the caller, who can not unload these
+			for (int channel : out.getChannels()) {
+
+				if (channel >= 0) {
+					closeChannel(channel);
+				}
+			}
+			throw e;
+		} finally {
+			loader.shutdown();
 		}
+		return out;
 	}
 
-	/** Pauses a channel playback. Effective only when its playback is ongoing
+	/** Sets the most loads of a batch to run at once. It bounds the I/O
+		issued by {@code loadAll}, and is best set after the number of cores
+		and the queue depth of the storage
+
+		@param      loads
+					Most loads to run at once
 
 		@throws     IllegalArgumentException
-					If the channel number is invalid
+					If {@code loads <= 0}
 	*/
-	public void stop(int channel) throws IllegalArgumentException {
+	public void setLoadConcurrency(int loads) throws IllegalArgumentException {
 
-		if (!isValidChannel(channel)) {
-			throw new IllegalArgumentException("Bad channel: " + channel);
+		if (loads <= 0) {
+			throw new IllegalArgumentException("Bad loads: " + loads);
 		}
-		channels[channel].stop();
+		this.loadConcurrency = loads;
 	}
 
-	/** Unloads an audio channel. This releases any resource associated to the
-		channel
+	/** Returns the most loads of a batch to run at once
+		@return     Most loads to run at once
+	*/
+	public int getLoadConcurrency() {
+		return loadConcurrency;
+	}
+
+	/** Calls an audio channel for playback as soon as it is loaded
+
+		@param      load
+					Load of the channel, as from {@code loadAsync}
+
+		@return     {@code CompletableFuture} of the channel number, completed
+					once playback is called
+	*/
+	public CompletableFuture<Integer> thenPlay(CompletionStage<Integer> load) {
+		return load.thenApply(channel -> {
+			play(channel);
+			return channel;
+		}).toCompletableFuture();
+	}
+
+	/** Calls an audio channel for playback on a background thread. If the
+		specified channel is busy this method does nothing
 
 		@param      channel
-					Channel number to be unloaded
+					Channel number to be called
 
-		@return     false if the operation was partially successful;
-					true otherwise
+		@return     {@code false} if the operation was not commenced;
+					{@code true} otherwise
 
 		@throws     IllegalArgumentException
 					If the channel number is invalid
 	*/
-	public boolean unload(int channel) throws IllegalArgumentException,
-		IOException {
+	public boolean play(int channel) throws IllegalArgumentException {
 
 		if (!isValidChannel(channel)) {
 			throw new IllegalArgumentException("Bad channel: " + channel);
 		}
-		return channels[channel].close();
-	}
-
-	/** Unloads all audio channels. This releases any resource associated to all
-		previously loaded channels
-
-		@return     false if the operation was partially successful;
-					true otherwise
-	*/
-	public boolean unloadAll() {
-		boolean out = true;
-
-		for (GDMAudio o : channels) {
 
-			if (o != null) {
+		if (audioOf(channel).start()) {
 
-				if (!o.close()) {
-					out = false;
-				}
+			if (mixFormat == null) {
+				pool.execute(audioOf(channel));
+			} else if (!mixer.add(audioOf(channel))) {
+				audioOf(channel).stop();
+				return false;
 			}
+			return true;
 		}
-		return out;
+		return false;
 	}
 
+	/** Calls audio channels for playback together. In mixer mode, they are
+		handed to the render thread at once and start on the same output
+		frame. Otherwise, each primes its line with its first audio data and
+		the lines are started back to back once all are primed. Busy channels
+		are left as they are
 
-	// helper methods
+		@param      channels
+					Channel numbers to be called
 
-	/** Constructs a {@code GDMAudio} on a free channel
+		@return     Number of channels called for playback
 
-		@param      format
-					{@code AudioFormat} defining audio parameters
+		@throws     IllegalArgumentException
+					If any channel number is invalid or appears twice
+	*/
+	public int playTogether(int... channels) throws IllegalArgumentException {
+		final GDMAudio[] group = new GDMAudio[channels.length];
 
-		@param      stream
-					Audio resource to be loaded
+		for (int i = 0; i < channels.length; i++) {
 
-		@return     Channel number to which this audio resource is mapped
+			if (!isValidChannel(channels[i])) {
+				throw new IllegalArgumentException("Bad channel: "
+					+ channels[i]);
+			}
 
-		@throws     IllegalStateException
-					If there are no free channels available for use
+			for (int j = 0; j < i; j++) {
 
-		@throws     IOException
-					If an input or output error occurs
+				if (channels[j] == channels[i]) {
+					throw new IllegalArgumentException("Bad channel: "
+						+ channels[i]);
+				}
+			}
+			group[i] = audioOf(channels[i]);
+		}
+		int out = 0;
 
-		@throws     LineUnavailableException
-					If a line can not be opened because it is unavailable
-	*/
-	private int makeChannel(AudioInputStream stream, AudioFormat format) throws
-		IllegalStateException, IOException, LineUnavailableException {
+		for (GDMAudio audio : group) {
 
-		final int i = getFreeChannel();
+			if (audio.start()) {
+				group[out++] = audio;
+			}
+		}
 
-		if (i < 0) {
-			throw new IllegalStateException("No free channels.");
+		if (out == 0) {
+			return 0;
 		}
+		final GDMAudio[] started = Arrays.copyOf(group, out);
 
-		channels[i] = new GDMAudio(stream, format);
-		return i;
-	}
+		if (mixFormat != null) {
 
-	/** Returns whether there is/are (a) free channel(s) available for use
+			if (!mixer.add(started)) {
 
-		@return     -1 if the condition is false;
-					otherwise returns a free channel number
-	*/
-	private int getFreeChannel() {
+				for (GDMAudio audio : started) {
+					audio.stop();
+				}
+				return 0;
+			}
+		} else {
+			final GDMStartGate gate = new GDMStartGate(out);
 
-		for (int i = 0; i < channels.length; i++) {
+			for (GDMAudio audio : started) {
+				audio.setGate(gate);
+			}
 
-			if (channels[i] == null || channels[i].isClosed()) {
-				return i;
+			for (GDMAudio audio : started) {
+				pool.execute(audio);
 			}
 		}
-		return -1;
+		return out;
 	}
 
-	/** Returns whether a channel number is valid
+	/** Calls an audio channel for playback on a frame of the output. The
+		channel starts on that very sample of the mix, as cued in the render
+		thread rather than picked up by a pool thread. A frame behind
+		{@code getRenderFrame} has been rendered already and is refused
+		rather than started late. Only available in mixer mode
 
 		@param      channel
-					Channel number to check the condition with
+					Channel number to be called
 
-		@return     true if the condition is true;
-					false otherwise
+		@param      frame
+					Output frame to start on. See {@code getRenderFrame}
+
+		@return     {@code false} if the operation was not commenced, as
+					when the frame has been rendered already;
+					{@code true} otherwise
+
+		@throws     IllegalArgumentException
+					If the channel number is invalid or {@code frame < 0}
+
+		@throws     IllegalStateException
+					If not in mixer mode
+	*/
+	public boolean playAt(int channel, long frame)
+		throws IllegalArgumentException, IllegalStateException {
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+
+		if (frame < 0) {
+			throw new IllegalArgumentException("Bad frame: " + frame);
+		}
+
+		if (mixFormat == null) {
+			throw new IllegalStateException("Not in mixer mode.");
+		}
+
+		if (audioOf(channel).start()) {
+
+			if (!mixer.add(audioOf(channel), frame)) {
+				audioOf(channel).stop();
+				return false;
+			}
+			return true;
+		}
+		return false;
+	}
+	/** Calls an audio channel for playback at a point in time. In mixer
+		mode, the time is converted to an output frame, and a time whose frame
+		has been rendered already is refused as with {@code playAt(int,
+		long)}. Otherwise, the line of the channel is led in with silence up to
+		it, and a time already past starts it as soon as possible
+
+		@param      channel
+					Channel number to be called
+
+		@param      at
+					Time to be heard at
+
+		@return     {@code false} if the operation was not commenced, as
+					when the time can no longer be met in mixer mode;
+					{@code true} otherwise
+
+		@throws     IllegalArgumentException
+					If the channel number is invalid or the time is null or
+					too far off
+	*/
+	public boolean playAt(int channel, Instant at)
+		throws IllegalArgumentException {
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+
+		if (at == null) {
+			throw new IllegalArgumentException("Bad time: " + at);
+		}
+		final long nanos;
+
+		try {
+			nanos = Math.max(Duration.between(Instant.now(), at).toNanos(), 0);
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException("Bad time: " + at);
+		}
+
+		if (mixFormat != null) {
+			final long frames =
+				(long) (nanos * (double) mixFormat.getFrameRate() / 1000000000);
+
+			if (audioOf(channel).start()) {
+
+				if (!mixer.add(audioOf(channel),
+					mixer.getFramePosition() + frames)) {
+
+					audioOf(channel).stop();
+					return false;
+				}
+				return true;
+			}
+			return false;
+		}
+
+		if (audioOf(channel).start()) {
+			audioOf(channel).setStartTime(System.nanoTime() + nanos);
+			pool.execute(audioOf(channel));
+			return true;
+		}
+		return false;
+	}
+
+	/** Returns the output frame being played in mixer mode, counted from the
+		first frame written to the line. It is what {@code playAt(int,
+		Instant)} converts times against
+
+		@return     Output frame, or 0 if nothing has been loaded yet
+
+		@throws     IllegalStateException
+					If not in mixer mode
+	*/
+	public long getOutputFrame() throws IllegalStateException {
+
+		if (mixFormat == null) {
+			throw new IllegalStateException("Not in mixer mode.");
+		}
+		final GDMMixer current = mixer;
+		return (current != null) ? current.getFramePosition() : 0;
+	}
+
+	/** Returns the earliest output frame {@code playAt} may start a channel
+		on in mixer mode. Frames before it have been rendered already. It runs
+		ahead of {@code getOutputFrame} by about the mix line buffer
+
+		@return     Output frame, or 0 if nothing has been loaded yet
+
+		@throws     IllegalStateException
+					If not in mixer mode
+	*/
+	public long getRenderFrame() throws IllegalStateException {
+
+		if (mixFormat == null) {
+			throw new IllegalStateException("Not in mixer mode.");
+		}
+		final GDMMixer current = mixer;
+		return (current != null) ? current.getRenderFrame() : 0;
+	}
+
+	/** Starts a new voice of a sample, overlapping any playback of its
+		channel and its other voices. A voice reads the audio data held by the
+		channel from the start with a position and gain of its own, so starting
+		one involves no I/O. It is closed once it ends, and when its channel is
+		paused or unloaded. Without mixer mode, each voice plays on a line of
+		its own
+
+		@param      channel
+					Channel number of a sample
+
+		@param      gain
+					Factor the voice is scaled by, 1 to play it as is.
+					Effective only for 16-bit signed PCM
+
+		@return     false if the operation was not commenced, in which case
+					the channel is not a sample or is closed, or a line can
+					not be opened;
+					true otherwise
+
+		@throws     IllegalArgumentException
+					If the channel number is invalid or {@code gain < 0}
+	*/
+	public boolean playVoice(int channel, float gain)
+		throws IllegalArgumentException {
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+
+		if (!(gain >= 0)) {
+			throw new IllegalArgumentException("Bad gain: " + gain);
+		}
+		final GDMAudio audio = audioOf(channel);
+		final GDMSampleBuffer sample = audio.getSample();
+
+		if ((sample == null) || audio.isClosed()) {
+			return false;
+		}
+		final AudioFormat format = audio.getFormat();
+		final InputStream reader;
+		final GDMAudio voice;
+
+		try {
+			reader = sample.open();
+		} catch (IllegalStateException e) {
+			return false;
+		}
+
+		try {
+			voice = makeAudio(new AudioInputStream(reader, format,
+				sample.length() / format.getFrameSize()), format);
+		} catch (IOException | UnsupportedAudioFileException
+			| LineUnavailableException | RuntimeException e) {
+
+			// the storage is released once its last reader is closed
+			try {
+				reader.close();
+			} catch (IOException f) {
+				// nothing else to be done
+			}
+			return false;
+		}
+		voice.setGain(gain);
+
+		if (!audio.addVoice(voice)) {
+			voice.close();
+			return false;
+		}
+
+		if (!voice.start()) {
+			audio.removeVoice(voice);
+			voice.close();
+			return false;
+		}
+
+		voice.whenEnded().whenComplete((ended, e) -> {
+			audio.removeVoice(voice);
+
+			// a paused line may still hold a writer, so it is not reused
+			if (Boolean.TRUE.equals(ended)) {
+				closeAudio(voice);
+			} else {
+				voice.close();
+			}
+		});
+
+		if (mixFormat == null) {
+			pool.execute(voice);
+		} else if (!mixer.add(voice)) {
+			voice.stop();
+			return false;
+		}
+		return true;
+	}
+
+	/** Queues an audio channel to be played as soon as another ends. When both
+		share an {@code AudioFormat}, the line of the ending channel keeps
+		running and the queued channel continues on it without a gap. Otherwise
+		the queued channel starts on its own line right after the ending channel
+		drains, on the same thread. In mixer mode, the queued channel continues
+		from the very next sample. If the ending channel is not playing, the
+		queued channel is called for playback right away
+
+		@param      channel
+					Channel number to be followed
+
+		@param      next
+					Channel number to be queued
+
+		@return     {@code false} if the operation was not commenced, in which
+					case the queued channel is busy;
+					{@code true} otherwise
+
+		@throws     IllegalArgumentException
+					If either channel number is invalid or they are equal
+	*/
+	public boolean playNext(int channel, int next)
+		throws IllegalArgumentException {
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+
+		if (!isValidChannel(next) || (next == channel)) {
+			throw new IllegalArgumentException("Bad channel: " + next);
+		}
+
+		if (!audioOf(next).isFree()) {
+			return false;
+		}
+
+		if (audioOf(channel).setSuccessor(audioOf(next))) {
+			return true;
+		}
+		return play(next);
+	}
+
+	/** Calls an audio channel for playback on the current thread. If the
+		specified channel is busy, this method does nothing
+
+		@param      channel
+					Channel number to be called
+
+		@return     {@code false} if the operation was not commenced;
+					{@code true} otherwise
+
+		@throws     IllegalArgumentException
+					If the channel number is invalid
+	*/
+	public boolean playAndAwait(int channel) throws IllegalArgumentException {
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+
+		if (mixFormat != null) {
+
+			if (play(channel)) {
+				audioOf(channel).await();
+				return true;
+			}
+			return false;
+		}
+
+		if (audioOf(channel).start()) {
+			audioOf(channel).run();
+			return true;
+		}
+		return false;
+	}
+
+	/** Awaits for a channel to end playback, then returns
+
+		@return     false if the operation was unsuccessful;
+					true otherwise
+
+		@throws     IllegalArgumentException
+					If the channel number is invalid
+	*/
+	public boolean await(int channel) throws IllegalArgumentException {
+
+		/*  r1: in r0, if playback is handled by a thread in pool, this method
+			does not return as such threads do not die after execution. This has
+			been fixed with the use of Future
+
+			Since mixer mode, channels are awaited on directly as they may not
+			be played on a thread of their own
+		*/
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+		return audioOf(channel).await();
+	}
+
+	/** Sets the priority of a channel against being stolen
+
+		@param      channel
+					Channel number
+
+		@param      priority
+					Priority, higher is kept longer
+
+		@throws     IllegalArgumentException
+					If the channel number is invalid
+	*/
+	public void setPriority(int channel, int priority)
+		throws IllegalArgumentException {
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+		audioOf(channel).setPriority(priority);
+	}
+
+	/** Returns the priority of a channel against being stolen
+
+		@param      channel
+					Channel number
+
+		@return     Priority
+
+		@throws     IllegalArgumentException
+					If the channel number is invalid
+	*/
+	public int getPriority(int channel) throws IllegalArgumentException {
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+		return audioOf(channel).getPriority();
+	}
+
+	/** Returns the state of playback of a channel
+
+		@param      channel
+					Channel number
+
+		@return     {@code GDMAudio.State}
+
+		@throws     IllegalArgumentException
+					If the channel number is invalid
+	*/
+	public GDMAudio.State getState(int channel)
+		throws IllegalArgumentException {
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+		return audioOf(channel).getState();
+	}
+
+	/** Returns a {@code CompletableFuture} that completes once the current or
+		most recent playback of a channel ends. Unlike {@code await}, no thread
+		is parked to react to a channel finishing. See
+		{@code GDMAudio.whenEnded}
+
+		@param      channel
+					Channel number
+
+		@return     {@code CompletableFuture} completing with true if playback
+					reached its end, or false if it was paused or closed
+
+		@throws     IllegalArgumentException
+					If the channel number is invalid
+	*/
+	public CompletableFuture<Boolean> whenEnded(int channel)
+		throws IllegalArgumentException {
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+		return audioOf(channel).whenEnded();
+	}
+
+	/** Pauses a channel playback. Effective only when its playback is ongoing
+
+		@throws     IllegalArgumentException
+					If the channel number is invalid
+	*/
+	public void stop(int channel) throws IllegalArgumentException {
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+		audioOf(channel).stop();
+	}
+
+	/** Repositions a channel to a frame, counted from its first frame. Works
+		forwards and backwards, also while playing. Loaded files seek in
+		constant time, regardless of the distance
+
+		@param      channel
+					Channel number to be repositioned
+
+		@param      frame
+					Frame to play from
+
+		@return     false if the operation was unsuccessful;
+					true otherwise
+
+		@throws     IllegalArgumentException
+					If the channel number or frame is invalid
+	*/
+	public boolean seek(int channel, long frame)
+		throws IllegalArgumentException {
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+		return audioOf(channel).seek(frame);
+	}
+
+	/** Repositions a channel to a point in time, counted from its start. See
+		{@code seek}
+
+		@param      channel
+					Channel number to be repositioned
+
+		@param      millis
+					Time to play from in milliseconds
+
+		@return     false if the operation was unsuccessful;
+					true otherwise
+
+		@throws     IllegalArgumentException
+					If the channel number or time is invalid
+	*/
+	public boolean seekMillis(int channel, long millis)
+		throws IllegalArgumentException {
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+		return audioOf(channel).seekMillis(millis);
+	}
+
+	/** Returns the length of a channel
+
+		@param      channel
+					Channel number
+
+		@return     Length in sample frames, or
+					{@code AudioSystem.NOT_SPECIFIED} if unknown
+
+		@throws     IllegalArgumentException
+					If the channel number is invalid
+	*/
+	public long getFrameLength(int channel) throws IllegalArgumentException {
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+		return audioOf(channel).getFrameLength();
+	}
+
+	/** Returns the position of the playback marker of a channel. See
+		{@code GDMAudio.getFramePosition}
+
+		@param      channel
+					Channel number
+
+		@return     Position in sample frames
+
+		@throws     IllegalArgumentException
+					If the channel number is invalid
+	*/
+	public long getFramePosition(int channel)
+		throws IllegalArgumentException {
+
+		if (!isValidChannel(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+		return audioOf(channel).getFramePosition();
+	}
+
+	/** Unloads an audio channel. This releases any resource associated to the
+		channel
+
+		@param      channel
+					Channel number to be unloaded
+
+		@return     false if the operation was partially successful, or the
+					channel has been stolen, in which case nothing is done;
+					true otherwise
+
+		@throws     IllegalArgumentException
+					If the channel number is invalid
+	*/
+	public boolean unload(int channel) throws IllegalArgumentException,
+		IOException {
+
+		if (!isValidChannel(channel) && !isStolen(channel)) {
+			throw new IllegalArgumentException("Bad channel: " + channel);
+		}
+		return closeChannel(channel);
+	}
+
+	/** Sets whether audio files are loaded through memory mapping. When set,
+		the data chunk of a WAV file is mapped and played straight from the
+		mapped region, skipping the intermediate heap buffers of the stream
+		path. Files of other types are loaded as usual
+
+		@param      mapped
+					Whether audio files are to be memory mapped
+	*/
+	public void setMapped(boolean mapped) {
+		this.mapped = mapped;
+	}
+
+	/** Returns whether audio files are loaded through memory mapping
+
+		@return     true if the condition is true;
+					false otherwise
+	*/
+	public boolean isMapped() {
+		return mapped;
+	}
+
+	/** Sets whether audio resources are loaded into off-heap memory. When
+		set, audio resources of known length that are neither memory mapped
+		nor cached are decoded into a {@code GDMSampleBuffer} on load, leaving
+		only a small fixed footprint per channel on the heap. Rewinding then
+		no longer buffers the resource on the heap either
+
+		@param      offHeap
+					Whether audio resources are to be loaded off the heap
+	*/
+	public void setOffHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
+	/** Returns whether audio resources are loaded into off-heap memory
+
+		@return     true if the condition is true;
+					false otherwise
+	*/
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	/** Sets the read-ahead of channels loaded hereafter. With read-ahead, a
+		channel reads its audio resource into a ring buffer on the reader
+		threads, which are kept apart from loads. Playback takes from the ring
+		buffer without ever waiting on I/O, and has it refilled once it drains
+		to half. On by default in mixer mode, where disabling it has the
+		render thread read every channel itself
+
+		@param      bytes
+					Depth of the ring buffer in bytes, or 0 to disable
+
+		@throws     IllegalArgumentException
+					If {@code bytes < 0}
+	*/
+	public void setReadAhead(int bytes) throws IllegalArgumentException {
+
+		if (bytes < 0) {
+			throw new IllegalArgumentException("Bad bytes: " + bytes);
+		}
+		this.readAhead = bytes;
+	}
+
+	/** Returns the read-ahead of channels loaded hereafter
+		@return     Depth of the ring buffer in bytes, or 0 if disabled
+	*/
+	public int getReadAhead() {
+		return readAhead;
+	}
+
+	/** Sets the target latency of channels loaded hereafter, and of the mixer
+		if it is yet to be opened. Read and write sizes and line buffer sizes
+		are then derived from it and the audio format. The amount queued in a
+		line grows from the target on underruns, and shrinks back to it while
+		the line stays healthy
+
+		@param      millis
+					Target latency in milliseconds, or 0 to use
+					{@code GDMAudio.BUFFER_SIZE} and default line buffer sizes,
+					except for the mixer line, which then buffers a few
+					blocks only
+
+		@throws     IllegalArgumentException
+					If {@code millis < 0}
+	*/
+	public void setLatency(int millis) throws IllegalArgumentException {
+
+		if (millis < 0) {
+			throw new IllegalArgumentException("Bad latency: " + millis);
+		}
+		this.latency = millis;
+	}
+
+	/** Returns the target latency of channels loaded hereafter
+		@return     Target latency in milliseconds, or 0 if unset
+	*/
+	public int getLatency() {
+		return latency;
+	}
+
+	/** Returns the number of times a line was found to have run dry while
+		paced after a target latency
+
+		@return     Underruns
+	*/
+	public long getUnderruns() {
+		return underruns.get();
+	}
+
+	/** Sets whether I/O is performed on virtual threads. This covers reading
+		ahead and background loads only, so that thousands of idle channels
+		cost next to nothing. Playback does not move: without mixer mode, each
+		playing channel still holds a platform thread of its own, as writing to
+		a line blocks in native code and would pin the carrier of a virtual
+		thread. Only mixer mode, which renders every channel on one thread,
+		does away with the thread per playing channel. Applies to channels
+		loaded hereafter
+
+		@param      enabled
+					Whether to perform I/O on virtual threads
+
+		@return     false if the operation was unsuccessful, in which case
+					virtual threads are not supported by the running Java
+					platform;
+					true otherwise
+	*/
+	public boolean setVirtualThreads(boolean enabled) {
+
+		if (!enabled) {
+			io = ioPool;
+			readers = readerPool;
+			return true;
+		}
+
+		if (io != ioPool) {
+			return true;
+		}
+
+		try {
+			io = (ExecutorService) Executors.class
+				.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+
+			readers = io;
+			return true;
+		} catch (ReflectiveOperationException e) {
+			return false;
+		}
+	}
+
+	/** Returns whether I/O is performed on virtual threads
+		@return     true if the condition is true;
+					false otherwise
+	*/
+	public boolean isVirtualThreads() {
+		return io != ioPool;
+	}
+
+	/** Sets how a busy channel is taken over when a load finds no free
+		channel. The stolen channel fades out over {@code STEAL_FADE_MILLIS}
+		if it is playing, then its resources are released. The load is
+		given a new number for the channel right away. The old number is no
+		longer valid: unloading it returns false and does nothing, while
+		other methods reject it
+
+		@param      policy
+					{@code GDMStealPolicy}, {@code NONE} to fail such loads
+
+		@throws     IllegalArgumentException
+					If the policy is null
+	*/
+	public void setStealPolicy(GDMStealPolicy policy)
+		throws IllegalArgumentException {
+
+		if (policy == null) {
+			throw new IllegalArgumentException("Bad policy: " + policy);
+		}
+		this.stealPolicy = policy;
+	}
+
+	/** Returns how a busy channel is taken over when none is free
+		@return     {@code GDMStealPolicy}
+	*/
+	public GDMStealPolicy getStealPolicy() {
+		return stealPolicy;
+	}
+
+	/** Returns the number of channels stolen by loads
+		@return     Stolen channels
+	*/
+	public long getStolenVoices() {
+		return stolen.get();
+	}
+
+	/** Sets the budget for decoded audio data of files kept in memory. Loading
+		a file kept in memory involves no I/O. Files are told apart by their
+		canonical path, size and modification time, and the least recently
+		used are evicted to stay within budget
+
+		@param      bytes
+					Maximum number of bytes kept in memory, or 0 to disable
+
+		@throws     IllegalArgumentException
+					If {@code bytes < 0}
+	*/
+	public void setCacheBudget(long bytes) throws IllegalArgumentException {
+		cache.setBudget(bytes);
+	}
+
+	/** Returns the budget for decoded audio data of files kept in memory
+		@return     Maximum number of bytes kept in memory
+	*/
+	public long getCacheBudget() {
+		return cache.getBudget();
+	}
+
+	/** Returns the number of bytes of decoded audio data kept in memory
+		@return     Bytes resident
+	*/
+	public long getCacheBytes() {
+		return cache.getBytes();
+	}
+
+	/** Returns the number of file loads served from memory
+		@return     Hits
+	*/
+	public long getCacheHits() {
+		return cache.getHits();
+	}
+
+	/** Returns the number of file loads not served from memory
+		@return     Misses
+	*/
+	public long getCacheMisses() {
+		return cache.getMisses();
+	}
+
+	/** Returns the ratio of file loads served from memory
+		@return     Hit rate from 0 to 1, or 0 if nothing is loaded yet
+	*/
+	public double getCacheHitRate() {
+		final long hits = cache.getHits();
+		final long total = hits + cache.getMisses();
+		return (total > 0) ? ((double) hits / total) : 0;
+	}
+
+	/** Returns the number of files evicted from memory
+		@return     Evictions
+	*/
+	public long getCacheEvictions() {
+		return cache.getEvictions();
+	}
+
+	/** Unloads all audio channels. This releases any resource associated to all
+		previously loaded channels, and closes the mixer in mixer mode. It is
+		opened again on the next load
+
+		@return     false if the operation was partially successful;
+					true otherwise
+	*/
+	public boolean unloadAll() {
+		boolean out = true;
+
+		for (int i = 0; i < channels.length; i++) {
+
+			if (channels[i] != null) {
+
+				if (!closeChannel(numberOf(i))) {
+					out = false;
+				}
+			}
+		}
+		closeMixer();
+		linePool.clear();
+		return out;
+	}
+
+	/** Sets the maximum number of opened lines kept for reuse after their
+		channels are unloaded. Lines in excess are closed
+
+		@param      capacity
+					Maximum number of idle lines, or 0 to disable reuse
+
+		@throws     IllegalArgumentException
+					If {@code capacity < 0}
+	*/
+	public void setLinePoolCapacity(int capacity)
+		throws IllegalArgumentException {
+
+		linePool.setCapacity(capacity);
+	}
+
+	/** Returns the maximum number of opened lines kept for reuse
+		@return     Capacity
+	*/
+	public int getLinePoolCapacity() {
+		return linePool.getCapacity();
+	}
+
+	/** Returns the number of loads that reused an opened line
+		@return     Hits
+	*/
+	public long getLinePoolHits() {
+		return linePool.getHits();
+	}
+
+	/** Returns the number of loads that had to open a line
+		@return     Misses
+	*/
+	public long getLinePoolMisses() {
+		return linePool.getMisses();
+	}
+
+
+	// helper methods
+
+	/** Constructs a {@code GDMAudio} on a free channel, stealing one if
+		none is free and the steal policy allows. In mixer mode, the audio
+		resource is converted to the mix format if needed
+
+		@param      format
+					{@code AudioFormat} defining audio parameters
+
+		@param      stream
+					Audio resource to be loaded
+
+		@param      priority
+					Priority against being stolen
+
+		@return     Channel number to which this audio resource is mapped
+
+		@throws     IllegalStateException
+					If there are no free channels available for use and none
+					may be stolen
+
+		@throws     IOException
+					If an input or output error occurs
+
+		@throws     UnsupportedAudioFileException
+					If the audio resource can not be converted to the mix format
+
+		@throws     LineUnavailableException
+					If a line can not be opened because it is unavailable
+	*/
+	private int makeChannel(AudioInputStream stream, AudioFormat format,
+		int priority) throws IllegalStateException, IOException,
+		UnsupportedAudioFileException, LineUnavailableException {
+
+		int i;
+
+		// a stolen number may be taken by another load meanwhile
+		while ((i = allocator.allocate()) < 0) {
+
+			if (!steal(priority)) {
+				throw new IllegalStateException("No free channels.");
+			}
+		}
+
+		try {
+			channels[i] = makeAudio(stream, format);
+			channels[i].setPriority(priority);
+
+			if (readAhead > 0) {
+				channels[i].setReadAhead(readAhead, readers);
+			}
+		} catch (IOException | UnsupportedAudioFileException
+			| LineUnavailableException | RuntimeException e) {
+
+			allocator.release(i);
+			throw e;
+		}
+		return numberOf(i);
+	}
+
+	/** Makes a {@code GDMAudio} of an opened audio resource, playing on a
+		line of its own or in the mixer
+
+		@param      stream
+					Audio resource to be played
+
+		@param      format
+					{@code AudioFormat} of the audio resource
+
+		@return     {@code GDMAudio}
+
+		@throws     IOException
+					If an I/O exception occurs
+
+		@throws     UnsupportedAudioFileException
+					If the audio resource can not be converted to the mix
+					format
+
+		@throws     LineUnavailableException
+					If a line can not be opened because it is unavailable
+	*/
+	private GDMAudio makeAudio(AudioInputStream stream, AudioFormat format)
+		throws IOException, UnsupportedAudioFileException,
+		LineUnavailableException {
+
+		if (mixFormat != null) {
+			openMixer();
+			return new GDMAudio(toMixFormat(stream, format), mixFormat, null,
+				null);
+		}
+		final GDMPacer pacer = makePacer(format);
+
+		final SourceDataLine line = linePool.acquire(format, (pacer != null)
+			? pacer.getBufferSize() : AudioSystem.NOT_SPECIFIED);
+
+		try {
+			return new GDMAudio(stream, format, line, pacer);
+		} catch (IOException | RuntimeException e) {
+			linePool.release(line);
+			throw e;
+		}
+	}
+
+	/** Converts an opened audio resource to the mix format if needed
+
+		@param      stream
+					Audio resource to be converted
+
+		@param      format
+					{@code AudioFormat} of the audio resource
+
+		@return     {@code AudioInputStream} in the mix format
+
+		@throws     UnsupportedAudioFileException
+					If the audio resource can not be converted to the mix
+					format
+	*/
+	private AudioInputStream toMixFormat(AudioInputStream stream,
+		AudioFormat format) throws UnsupportedAudioFileException {
+
+		if (format.matches(mixFormat)) {
+			return stream;
+		}
+
+		try {
+			return AudioSystem.getAudioInputStream(mixFormat, stream);
+		} catch (IllegalArgumentException e) {
+
+			throw new UnsupportedAudioFileException(
+				"Can not convert " + format + " to " + mixFormat);
+		}
+	}
+
+	/** Runs a load on the I/O threads
+
+		@param      load
+					Load returning the channel number
+
+		@return     {@code CompletableFuture} of the channel number
+	*/
+	private CompletableFuture<Integer> loadAsync(Callable<Integer> load) {
+		final CompletableFuture<Integer> out = new CompletableFuture<>();
+
+		io.execute(() -> {
+
+			try {
+				final int channel = load.call();
+
+				// cancelled meanwhile, nobody is to unload it
+				if (!out.complete(channel)) {
+					closeChannel(channel);
+				}
+			} catch (Exception e) {
+				out.completeExceptionally(e);
+			}
+		});
+		return out;
+	}
+
+	/** Releases any resource associated to a channel and frees its number.
+		Its line is returned to the pool unless it is still playing. A number
+		handed out before the channel was stolen is left alone, as it no
+		longer refers to what is loaded there
+
+		@param      channel
+					Channel number to be closed
+
+		@return     false if the operation was partially successful, or the
+					channel has been stolen;
+					true otherwise
+	*/
+	private boolean closeChannel(int channel) {
+		final int i = channel % channels.length;
+
+		synchronized (stolen) {
+
+			if (channel / channels.length != generations.get(i)) {
+				return false;
+			}
+			final boolean out = closeAudio(channels[i]);
+			allocator.release(i);
+			return out;
+		}
+	}
+
+	/** Releases any resource associated to a {@code GDMAudio}. Its line is
+		returned to the pool unless it is still playing
+
+		@param      audio
+					{@code GDMAudio} to be closed
+
+		@return     false if the operation was partially successful;
+					true otherwise
+	*/
+	private boolean closeAudio(GDMAudio audio) {
+
+		if (audio.isFree() && !audio.isClosed()) {
+			final SourceDataLine line = audio.detach();
+
+			if (line != null) {
+				linePool.release(line);
+			}
+		}
+		return audio.close();
+	}
+
+	/** Steals a busy channel after the steal policy and frees its number. A
+		playing channel is faded out, any other is closed right away
+
+		@param      priority
+					Priority of the load to free a number for
+
+		@return     false if no channel may be stolen;
+					true otherwise
+	*/
+	private boolean steal(int priority) {
+		final GDMStealPolicy policy = stealPolicy;
+
+		if (policy == GDMStealPolicy.NONE) {
+			return false;
+		}
+
+		// one stealer at a time, so that no channel is stolen twice
+		synchronized (stolen) {
+			GDMAudio victim = null;
+			int index = -1;
+
+			for (int i = 0; i < channels.length; i++) {
+				final GDMAudio audio = channels[i];
+
+				if ((audio == null) || audio.isClosed() || audio.isFading()
+					|| (audio.getPriority() > priority)) {
+
+					continue;
+				}
+
+				if ((victim == null) || precedes(policy, audio, victim)) {
+					victim = audio;
+					index = i;
+				}
+			}
+
+			if (victim == null) {
+				return false;
+			}
+
+			if (!victim.fadeOut(STEAL_FADE_MILLIS)) {
+				closeAudio(victim);
+			}
+			stolen.incrementAndGet();
+
+			// a new number, so that the old one can not act on the new load
+			final int generation = generations.get(index) + 1;
+
+			generations.set(index,
+				(generation < Integer.MAX_VALUE / channels.length)
+				? generation : 0);
+
+			allocator.release(index);
+			return true;
+		}
+	}
+
+	/** Returns whether a channel is to be stolen before another
+
+		@param      policy
+					{@code GDMStealPolicy} to compare after
+
+		@param      a
+					Channel to be compared
+
+		@param      b
+					Channel to be compared against
+
+		@return     true if the condition is true;
+					false otherwise
+	*/
+	private static boolean precedes(GDMStealPolicy policy, GDMAudio a,
+		GDMAudio b) {
+
+		switch (policy) {
+			case QUIETEST:
+				final int level = a.getLevel();
+
+				if (level != b.getLevel()) {
+					return level < b.getLevel();
+				}
+				break;
+			case LOWEST_PRIORITY:
+				final int priority = a.getPriority();
+
+				if (priority != b.getPriority()) {
+					return priority < b.getPriority();
+				}
+				break;
+			default:
+				break;
+		}
+		return a.getSince() - b.getSince() < 0;
+	}
+
+	/** Opens the mixer and starts rendering if it is not yet opened
+
+		@throws     LineUnavailableException
+					If a line can not be opened because it is unavailable
+	*/
+	private synchronized void openMixer() throws LineUnavailableException {
+
+		if (mixer == null) {
+			mixer = new GDMMixer(mixFormat, makePacer(mixFormat));
+			pool.execute(mixer);
+		}
+	}
+
+	/** Closes the mixer if it is opened, so that it is opened anew on the
+		next load
+	*/
+	private synchronized void closeMixer() {
+
+		if (mixer != null) {
+			mixer.close();
+			mixer = null;
+		}
+	}
+
+	/** Makes a {@code GDMPacer} after the target latency
+
+		@param      format
+					{@code AudioFormat} defining audio parameters
+
+		@return     null if there is no target latency;
+					otherwise returns a new {@code GDMPacer}
+	*/
+	private GDMPacer makePacer(AudioFormat format) {
+		final int millis = latency;
+		return (millis > 0) ? new GDMPacer(format, millis, underruns) : null;
+	}
+
+	/** Opens an audio file, mapping it if enabled
+
+		@param      file
+					File to be opened
+
+		@return     {@code AudioInputStream} positioned at the first frame
+
+		@throws     IOException
+					If an I/O exception occurs
+
+		@throws     UnsupportedAudioFileException
+					If the audio resource does not contain valid data of a
+					recognized file type and format
+	*/
+	private AudioInputStream openFile(File file) throws IOException,
+		UnsupportedAudioFileException {
+
+		if (mapped) {
+			final AudioInputStream out = mapFile(file);
+
+			if (out != null) {
+				return out;
+			}
+		}
+		final FileChannel channel =
+			FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		final long length;
+
+		try {
+			length = channel.size();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		// rewinds by repositioning rather than buffering the whole file
+		return offHeap(openStream(
+			new GDMFileInputStream(channel, 0, length), true));
+	}
+
+	/** Decodes an opened audio file into off-heap memory and keeps it in the
+		cache. Files of unknown length or larger than the budget are left as
+		is
+
+		@param      file
+					File that was opened
+
+		@param      stream
+					{@code AudioInputStream} of the file, positioned at the
+					first frame
+
+		@return     {@code AudioInputStream} to load the file from
+
+		@throws     IOException
+					If an I/O exception occurs
+	*/
+	private AudioInputStream cacheFile(File file, AudioInputStream stream)
+		throws IOException {
+
+		stream = decode(stream);
+
+		if ((stream.getFrameLength() == AudioSystem.NOT_SPECIFIED)
+			|| (stream.getFrameLength() * stream.getFormat().getFrameSize()
+				> cache.getBudget())) {
+
+			return stream;
+		}
+		return cache.put(file, stream.getFormat(), store(stream));
+	}
+
+	/** Decodes an opened audio resource into off-heap memory if enabled.
+		Resources of unknown length are left as is
+
+		@param      stream
+					{@code AudioInputStream} of the resource, positioned at
+					the first frame
+
+		@return     {@code AudioInputStream} to load the resource from
+
+		@throws     IOException
+					If an I/O exception occurs
+	*/
+	private AudioInputStream offHeap(AudioInputStream stream)
+		throws IOException {
+
+		if (!offHeap) {
+			return stream;
+		}
+		stream = decode(stream);
+
+		if (stream.getFrameLength() == AudioSystem.NOT_SPECIFIED) {
+			return stream;
+		}
+		final AudioFormat format = stream.getFormat();
+		final GDMSampleBuffer data = store(stream);
+		final AudioInputStream out = new AudioInputStream(data.open(), format,
+			data.length() / format.getFrameSize());
+
+		// released once the channel is closed
+		data.free();
+		return out;
+	}
+
+	/** Decodes an opened audio resource into PCM if it is compressed, so that
+		it is kept in memory ready to be played
+
+		@param      stream
+					{@code AudioInputStream} of the resource
+
+		@return     {@code AudioInputStream} of PCM audio data
+	*/
+	private static AudioInputStream decode(AudioInputStream stream) {
+		final AudioFormat.Encoding encoding = stream.getFormat().getEncoding();
+
+		if (!AudioFormat.Encoding.PCM_SIGNED.equals(encoding)
+			&& !AudioFormat.Encoding.PCM_UNSIGNED.equals(encoding)
+			&& !AudioFormat.Encoding.PCM_FLOAT.equals(encoding)
+			&& AudioSystem.isConversionSupported(
+				AudioFormat.Encoding.PCM_SIGNED, stream.getFormat())) {
+
+			return AudioSystem.getAudioInputStream(
+				AudioFormat.Encoding.PCM_SIGNED, stream);
+		}
+		return stream;
+	}
+
+	/** Reads an audio resource of known length fully into off-heap memory,
+		then closes it
+
+		@param      stream
+					{@code AudioInputStream} of the resource, positioned at
+					the first frame
+
+		@return     {@code GDMSampleBuffer} holding the audio data
+
+		@throws     IOException
+					If an I/O exception occurs
+	*/
+	private static GDMSampleBuffer store(AudioInputStream stream)
+		throws IOException {
+
+		try {
+			final GDMSampleBuffer out = new GDMSampleBuffer(
+				stream.getFrameLength() * stream.getFormat().getFrameSize());
+
+			try {
+				out.readFrom(stream);
+			} catch (IOException | RuntimeException | Error e) {
+				out.free();
+				throw e;
+			}
+			return out;
+		} finally {
+			stream.close();
+		}
+	}
+
+	/** Opens an {@code AudioInputStream} on an {@code InputStream} in a
+		single pass. WAV headers are parsed by {@code GDMWaveHeader}, leaving
+		the stream positioned at the data chunk. Other types, and WAV formats
+		it does not handle, are handed over to {@code AudioSystem}
+
+		@param      stream
+					{@code InputStream} positioned at the start of the
+					resource, supporting {@code mark} and {@code reset}
+
+		@param      owned
+					Whether {@code stream} is to be closed on failure
+
+		@return     {@code AudioInputStream} positioned at the first frame
+
+		@throws     IOException
+					If an I/O exception occurs
+
+		@throws     UnsupportedAudioFileException
+					If the audio resource does not contain valid data of a
+					recognized file type and format
+	*/
+	private static AudioInputStream openStream(InputStream stream,
+		boolean owned) throws IOException, UnsupportedAudioFileException {
+
+		try {
+			stream.mark(GDMWaveHeader.MARK_LIMIT);
+			final GDMWaveHeader header = GDMWaveHeader.read(stream);
+
+			if (header == null) {
+				stream.reset();
+				return AudioSystem.getAudioInputStream(stream);
+			}
+			return new AudioInputStream(stream, header.getFormat(),
+				header.getFrameLength());
+		} catch (IOException | UnsupportedAudioFileException
+			| RuntimeException e) {
+
+			if (owned) {
+				stream.close();
+			}
+			throw e;
+		}
+	}
+
+	/** Maps the data chunk of a WAV file onto an {@code AudioInputStream}.
+		The header is parsed once, straight from the file channel
+
+		@param      file
+					File to be mapped
+
+		@return     null if the file is not a WAV file of a format handled
+					by {@code GDMWaveHeader};
+					otherwise returns an {@code AudioInputStream} reading from
+					the mapped data chunk
+
+		@throws     IOException
+					If an I/O exception occurs
+
+		@throws     UnsupportedAudioFileException
+					If the audio resource does not contain valid data of a
+					recognized file type and format
+	*/
+	private static AudioInputStream mapFile(File file) throws IOException,
+		UnsupportedAudioFileException {
+
+		final FileChannel channel =
+			FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+		try {
+			final GDMWaveHeader header = GDMWaveHeader.read(
+				new BufferedInputStream(Channels.newInputStream(channel)));
+
+			if (header == null) {
+				channel.close();
+				return null;
+			}
+			final long offset = header.getDataOffset();
+			long length = channel.size() - offset;
+
+			if (header.getDataLength() != GDMWaveHeader.UNKNOWN_LENGTH) {
+				length = Math.min(length, header.getDataLength());
+			}
+			final AudioFormat format = header.getFormat();
+
+			return new AudioInputStream(
+				new GDMMappedInputStream(channel, offset, length),
+				format, length / format.getFrameSize());
+		} catch (IOException | UnsupportedAudioFileException
+			| RuntimeException e) {
+
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Returns whether a channel number is valid
+
+		@param      channel
+					Channel number to check the condition with
+
+		@return     true if the condition is true;
+					false otherwise
 	*/
 	private boolean isValidChannel(int channel) {
 
-		return (channel >= 0)
-			&& (channel < channels.length)
-			&& (channels[channel] != null);
+		if ((channel < 0) || (channels.length == 0)) {
+			return false;
+		}
+		final int i = channel % channels.length;
+
+		return (channel / channels.length == generations.get(i))
+			&& (channels[i] != null);
+	}
+
+	/** Returns whether a channel number was handed out before its channel
+		was stolen
+
+		@param      channel
+					Channel number to check the condition with
+
+		@return     true if the condition is true;
+					false otherwise
+	*/
+	private boolean isStolen(int channel) {
+
+		return (channel >= 0) && (channels.length > 0)
+			&& (channel / channels.length
+				< generations.get(channel % channels.length));
+	}
+
+	/** Returns the number handed out for a channel, which changes each time
+		it is stolen
+
+		@param      i
+					Index of the channel
+
+		@return     Channel number
+	*/
+	private int numberOf(int i) {
+		return i + generations.get(i) * channels.length;
+	}
+
+	/** Returns the channel a valid channel number refers to
+
+		@param      channel
+					Channel number
+
+		@return     {@code GDMAudio} of the channel
+	*/
+	private GDMAudio audioOf(int channel) {
+		return channels[channel % channels.length];
 	}
 
 
 	// helper classes
 
+	/** A {@code LoadTask} loads a range of a batch, splitting it in halves
+		until single files remain
+	*/
+	private class LoadTask extends RecursiveAction {
+
+		/** Serialization version, as required of {@code RecursiveAction} */
+		private static final long serialVersionUID = 1L;
+
+
+		/** Paths to files of the batch */
+		private final Path[] paths;
+
+		/** Outcome of the batch */
+		private final GDMLoadResult result;
+
+		/** Start of the range, inclusive */
+		private final int from;
+
+		/** End of the range, exclusive */
+		private final int to;
+
+
+		/** Constructs a new instance of this class for a range of a batch */
+		private LoadTask(Path[] paths, GDMLoadResult result, int from,
+			int to) {
+
+			this.paths = paths;
+			this.result = result;
+			this.from = from;
+			this.to = to;
+		}
+
+
+		@Override
+		protected void compute() {
+
+			if (to - from > 1) {
+				final int middle = (from + to) >>> 1;
+
+				invokeAll(new LoadTask(paths, result, from, middle),
+					new LoadTask(paths, result, middle, to));
+
+				return;
+			}
+
+			try {
+				result.set(from, load(paths[from].toFile()));
+			} catch (Exception e) {
+				result.fail(from, e);
+			} catch (OutOfMemoryError e) {
+
+				// staging a large file may not fit, while smaller ones do
+				result.fail(from, new IOException(
+					"Out of memory loading " + paths[from], e));
+			}
+		}
+	}
+
 	/** A {@code GDMThreadFactory} makes new daemon threads designed for use in
 		{@code GDMAudioEngine}
 	*/
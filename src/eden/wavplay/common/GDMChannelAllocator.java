@@ -0,0 +1,100 @@
+package eden.wavplay.common;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** The {@code GDMChannelAllocator} class hands out channel numbers from a
+	lock-free stack of free numbers, so that concurrent loads always get
+	distinct channels in constant time regardless of the channel count.
+	<br><br>
+	The top of the stack is stamped with a version that changes on every
+	operation, so a number taken and given back in between is never mistaken
+	for the same top. Giving back a number that is already free has no effect.
+
+	@author     Brendon
+	@version    u0r0, 10/18/2026
+*/
+class GDMChannelAllocator {
+
+	/** Denotes an empty stack */
+	private static final int NONE = -1;
+
+
+	/** Free number below each free number on the stack */
+	private final AtomicIntegerArray below;
+
+	/** Whether each number is handed out, 1 if so */
+	private final AtomicIntegerArray taken;
+
+	/** Version in the upper and number in the lower 32 bits of the top */
+	private final AtomicLong top;
+
+
+	/** Constructs a new instance of this class with all numbers free, handed
+		out from the lowest
+
+		@param      channels
+					Number of channels
+	*/
+	GDMChannelAllocator(int channels) {
+		this.below = new AtomicIntegerArray(channels);
+		this.taken = new AtomicIntegerArray(channels);
+
+		for (int i = 0; i < channels; i++) {
+			below.set(i, (i + 1 < channels) ? (i + 1) : NONE);
+		}
+		this.top = new AtomicLong(pack(0, (channels > 0) ? 0 : NONE));
+	}
+
+
+	/** Takes a free channel number
+
+		@return     -1 if there is no free channel;
+					otherwise returns the channel number
+	*/
+	int allocate() {
+
+		while (true) {
+			final long t = top.get();
+			final int i = (int) t;
+
+			if (i == NONE) {
+				return -1;
+			}
+
+			if (top.compareAndSet(t, pack((int) (t >>> 32) + 1, below.get(i)))) {
+				taken.set(i, 1);
+				return i;
+			}
+		}
+	}
+
+	/** Gives back a channel number. Does nothing if it is already free
+
+		@param      i
+					Channel number
+	*/
+	void release(int i) {
+
+		if (!taken.compareAndSet(i, 1, 0)) {
+			return;
+		}
+
+		while (true) {
+			final long t = top.get();
+			below.set(i, (int) t);
+
+			if (top.compareAndSet(t, pack((int) (t >>> 32) + 1, i))) {
+				return;
+			}
+		}
+	}
+
+
+	// helper methods
+
+	/** Packs a version and a number into a top */
+	private static long pack(int version, int i) {
+		return ((long) version << 32) | (i & 0xFFFFFFFFL);
+	}
+}
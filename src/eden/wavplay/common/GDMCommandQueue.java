@@ -0,0 +1,120 @@
+package eden.wavplay.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** The {@code GDMCommandQueue} class is a bounded lock-free queue of commands
+	from any number of threads to a single consumer, such as the render thread
+	of a {@code GDMMixer}. Posting never blocks: a full queue refuses the
+	command instead. Commands are taken in the order their posts succeeded.
+	<br><br>
+	Each slot carries a sequence number that tells whether it is free for the
+	producer of a given position or filled for the consumer, so producers only
+	contend on claiming a position and never on the slots themselves.
+
+	@param      <T>
+				Type of command
+
+	@author     Brendon
+	@version    u0r0, 10/18/2026
+*/
+class GDMCommandQueue<T> {
+
+	/** Commands by slot */
+	private final AtomicReferenceArray<T> slots;
+
+	/** Sequence numbers by slot */
+	private final AtomicLongArray sequences;
+
+	/** Mask of a position to its slot */
+	private final int mask;
+
+	/** Next position to be claimed by a producer */
+	private final AtomicLong tail;
+
+	/** Next position to be taken. Accessed by the consumer only */
+	private long head;
+
+
+	/** Constructs a new instance of this class with a given capacity
+
+		@param      capacity
+					Minimum capacity in commands, rounded up to a power of 2
+
+		@throws     IllegalArgumentException
+					If {@code capacity <= 0} or it is too large
+	*/
+	GDMCommandQueue(int capacity) {
+
+		if ((capacity <= 0) || (capacity > (1 << 30))) {
+			throw new IllegalArgumentException("Bad capacity: " + capacity);
+		}
+		final int size = Integer.highestOneBit(capacity - 1) << 1;
+		this.slots = new AtomicReferenceArray<>(Math.max(size, 1));
+		this.sequences = new AtomicLongArray(slots.length());
+		this.mask = slots.length() - 1;
+		this.tail = new AtomicLong();
+
+		for (int i = 0; i < sequences.length(); i++) {
+			sequences.set(i, i);
+		}
+	}
+
+
+	/** Posts a command. Safe to be called from any thread
+
+		@param      command
+					Command to be posted
+
+		@return     false if the queue is full, in which case nothing is
+					posted;
+					true otherwise
+	*/
+	boolean offer(T command) {
+		long position = tail.get();
+
+		while (true) {
+			final int i = (int) position & mask;
+			final long lag = sequences.get(i) - position;
+
+			if (lag == 0) {
+
+				if (tail.compareAndSet(position, position + 1)) {
+					slots.lazySet(i, command);
+
+					// publishes the command to the consumer
+					sequences.set(i, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (lag < 0) {
+
+				// not yet taken from the previous lap
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	/** Takes the next command. To be called from the consumer only
+
+		@return     null if there is no command;
+					otherwise returns the command
+	*/
+	T poll() {
+		final int i = (int) head & mask;
+
+		if (sequences.get(i) != head + 1) {
+			return null;
+		}
+		final T out = slots.get(i);
+		slots.lazySet(i, null);
+
+		// frees the slot for the producer of the next lap
+		sequences.set(i, head + mask + 1);
+		head++;
+		return out;
+	}
+}
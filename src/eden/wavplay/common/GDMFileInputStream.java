@@ -0,0 +1,198 @@
+package eden.wavplay.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** The {@code GDMFileInputStream} class reads a region of a file through a
+	file channel at explicit positions. Marking is supported at no cost as it
+	only records a position, and resetting repositions the reads, so any
+	{@code readlimit} is honored while memory stays bounded by the buffer.
+	<br><br>
+	Unlike a {@code BufferedInputStream}, marking with a {@code readlimit} as
+	large as the whole region does not grow any buffer, which keeps rewinding
+	long files cheap. Reads at least as large as the buffer go straight into
+	the buffer of the reader.
+
+	@author     Brendon
+	@version    u0r0, 10/18/2026
+*/
+public class GDMFileInputStream extends InputStream {
+
+	/** Size of the buffer in bytes */
+	public static final int BUFFER_SIZE = 8192;
+
+
+	/** File channel from which the region is read */
+	private final FileChannel channel;
+
+	/** Start of the region in bytes */
+	private final long offset;
+
+	/** Length of the region in bytes */
+	private final long length;
+
+	/** Buffered data of the region */
+	private final byte[] buffer;
+
+	/** Position of the buffered data relative to the start of the region */
+	private long bufferStart;
+
+	/** Number of valid bytes in the buffer */
+	private int bufferLength;
+
+	/** Current position relative to the start of the region */
+	private long position;
+
+	/** Marked position relative to the start of the region */
+	private long mark;
+
+
+	/** Constructs a new instance of this class that reads a region of a file
+
+		@param      channel
+					File channel from which the region is to be read
+
+		@param      offset
+					Start of the region in bytes
+
+		@param      length
+					Length of the region in bytes
+
+		@throws     IllegalArgumentException
+					If {@code offset < 0} or {@code length < 0}
+	*/
+	public GDMFileInputStream(FileChannel channel, long offset, long length) {
+
+		if (offset < 0) {
+			throw new IllegalArgumentException("Bad offset: " + offset);
+		}
+
+		if (length < 0) {
+			throw new IllegalArgumentException("Bad length: " + length);
+		}
+		this.channel = channel;
+		this.offset = offset;
+		this.length = length;
+		this.buffer = new byte[BUFFER_SIZE];
+	}
+
+
+	@Override
+	public int read() throws IOException {
+
+		if ((position >= length) || !fill()) {
+			return -1;
+		}
+		return buffer[(int) (position++ - bufferStart)] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+
+		if ((off < 0) || (len < 0) || (len > b.length - off)) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		if (len == 0) {
+			return 0;
+		}
+
+		if (position >= length) {
+			return -1;
+		}
+		int out = (int) Math.min(len, length - position);
+
+		if (!isBuffered() && (out >= buffer.length)) {
+			out = channel.read(ByteBuffer.wrap(b, off, out), offset + position);
+
+			if (out <= 0) {
+				return -1;
+			}
+		} else {
+
+			if (!fill()) {
+				return -1;
+			}
+			final int index = (int) (position - bufferStart);
+			out = Math.min(out, bufferLength - index);
+			System.arraycopy(buffer, index, b, off, out);
+		}
+		position += out;
+		return out;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+
+		if (n <= 0) {
+			return 0;
+		}
+		final long out = Math.min(n, length - position);
+		position += out;
+		return out;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(Integer.MAX_VALUE, length - position);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		mark = position;
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		position = mark;
+	}
+
+	/** Closes the underlying file channel */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+
+	// helper methods
+
+	/** Returns whether the current position is buffered
+
+		@return     true if the condition is true;
+					false otherwise
+	*/
+	private boolean isBuffered() {
+		return (position >= bufferStart)
+			&& (position < bufferStart + bufferLength);
+	}
+
+	/** Buffers data from the current position unless already buffered
+
+		@return     false if the file ends before the region does;
+					true otherwise
+	*/
+	private boolean fill() throws IOException {
+
+		if (isBuffered()) {
+			return true;
+		}
+		bufferStart = position;
+		bufferLength = 0;
+		final int bytes = channel.read(ByteBuffer.wrap(buffer, 0,
+			(int) Math.min(buffer.length, length - position)),
+			offset + position);
+
+		if (bytes <= 0) {
+			return false;
+		}
+		bufferLength = bytes;
+		return true;
+	}
+}
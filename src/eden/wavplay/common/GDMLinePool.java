@@ -0,0 +1,277 @@
+package eden.wavplay.common;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/** The {@code GDMLinePool} class keeps a bounded number of opened lines for
+	reuse, keyed by {@code AudioFormat} and buffer size. Opening a line is far
+	more expensive than starting one, so handing out an idle opened line takes
+	most of the latency out of loading a channel.
+	<br><br>
+	When the pool is full, the line of the least recently used key is closed to
+	make room. Hits and misses are counted to aid sizing.
+
+	@author     Brendon
+	@version    u0r0, 10/18/2026
+*/
+class GDMLinePool {
+
+	/** Idle lines by key, in order of least recent use */
+	private final LinkedHashMap<Key, ArrayDeque<SourceDataLine>> idle;
+
+	/** Keys of lines handed out, so they return to where they came from */
+	private final IdentityHashMap<SourceDataLine, Key> owned;
+
+	/** Number of times an idle line was handed out */
+	private final AtomicLong hits;
+
+	/** Number of times a line had to be opened */
+	private final AtomicLong misses;
+
+	/** Maximum number of idle lines */
+	private int capacity;
+
+	/** Number of idle lines */
+	private int size;
+
+
+	/** Constructs a new instance of this class with a given capacity
+
+		@param      capacity
+					Maximum number of idle lines to be kept
+
+		@throws     IllegalArgumentException
+					If {@code capacity < 0}
+	*/
+	GDMLinePool(int capacity) {
+
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Bad capacity: " + capacity);
+		}
+		this.idle = new LinkedHashMap<>(16, 0.75f, true);
+		this.owned = new IdentityHashMap<>();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.capacity = capacity;
+	}
+
+
+	/** Hands out an opened line, opening one if none is idle
+
+		@param      format
+					{@code AudioFormat} of the line
+
+		@param      bufferSize
+					Buffer size of the line in bytes, or
+					{@code AudioSystem.NOT_SPECIFIED} for the default
+
+		@return     Opened, stopped line
+
+		@throws     LineUnavailableException
+					If a line can not be opened because it is unavailable
+	*/
+	SourceDataLine acquire(AudioFormat format, int bufferSize)
+		throws LineUnavailableException {
+
+		final Key key = new Key(format, bufferSize);
+
+		synchronized (this) {
+			final ArrayDeque<SourceDataLine> lines = idle.get(key);
+
+			while ((lines != null) && !lines.isEmpty()) {
+				final SourceDataLine out = lines.pop();
+				size--;
+
+				if (out.isOpen()) {
+					owned.put(out, key);
+					hits.incrementAndGet();
+					return out;
+				}
+			}
+		}
+		misses.incrementAndGet();
+
+		// opened outside the lock as it may take long
+		final SourceDataLine out = AudioSystem.getSourceDataLine(format);
+
+		if (bufferSize == AudioSystem.NOT_SPECIFIED) {
+			out.open(format);
+		} else {
+			out.open(format, bufferSize);
+		}
+
+		synchronized (this) {
+			owned.put(out, key);
+		}
+		return out;
+	}
+
+	/** Takes back a line that has been handed out. The line is stopped and
+		flushed, then kept if there is room or closed otherwise
+
+		@param      line
+					Line to be taken back
+	*/
+	void release(SourceDataLine line) {
+		line.stop();
+		line.flush();
+
+		synchronized (this) {
+			final Key key = owned.remove(line);
+
+			if ((key != null) && line.isOpen() && (capacity > 0)) {
+
+				if (size >= capacity) {
+					evict();
+				}
+				ArrayDeque<SourceDataLine> lines = idle.get(key);
+
+				if (lines == null) {
+					lines = new ArrayDeque<>();
+					idle.put(key, lines);
+				}
+				lines.push(line);
+				size++;
+				return;
+			}
+		}
+		line.close();
+	}
+
+	/** Sets the maximum number of idle lines, closing any in excess
+
+		@param      capacity
+					Maximum number of idle lines to be kept
+
+		@throws     IllegalArgumentException
+					If {@code capacity < 0}
+	*/
+	synchronized void setCapacity(int capacity) {
+
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Bad capacity: " + capacity);
+		}
+		this.capacity = capacity;
+
+		while (size > capacity) {
+			evict();
+		}
+	}
+
+	/** Closes all idle lines */
+	synchronized void clear() {
+
+		for (ArrayDeque<SourceDataLine> lines : idle.values()) {
+
+			for (SourceDataLine line : lines) {
+				line.close();
+			}
+		}
+		idle.clear();
+		size = 0;
+	}
+
+	/** Returns the maximum number of idle lines
+		@return     Capacity
+	*/
+	synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/** Returns the number of times an idle line was handed out
+		@return     Hits
+	*/
+	long getHits() {
+		return hits.get();
+	}
+
+	/** Returns the number of times a line had to be opened
+		@return     Misses
+	*/
+	long getMisses() {
+		return misses.get();
+	}
+
+
+	// helper methods
+
+	/** Closes an idle line of the least recently used key */
+	private void evict() {
+		final Iterator<Map.Entry<Key, ArrayDeque<SourceDataLine>>> it =
+			idle.entrySet().iterator();
+
+		while (it.hasNext()) {
+			final ArrayDeque<SourceDataLine> lines = it.next().getValue();
+
+			if (!lines.isEmpty()) {
+				lines.removeLast().close();
+				size--;
+
+				if (lines.isEmpty()) {
+					it.remove();
+				}
+				return;
+			}
+			it.remove();
+		}
+	}
+
+
+	// helper classes
+
+	/** A {@code Key} identifies interchangeable lines. {@code AudioFormat}
+		does not override {@code equals}, hence its parameters are compared
+	*/
+	private static class Key {
+
+		/** Defines audio parameters */
+		private final AudioFormat format;
+
+		/** Buffer size in bytes */
+		private final int bufferSize;
+
+
+		/** Constructs a new instance of this class */
+		private Key(AudioFormat format, int bufferSize) {
+			this.format = format;
+			this.bufferSize = bufferSize;
+		}
+
+
+		@Override
+		public boolean equals(Object o) {
+
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			final Key k = (Key) o;
+
+			return (bufferSize == k.bufferSize)
+				&& format.getEncoding().equals(k.format.getEncoding())
+				&& (format.getSampleRate() == k.format.getSampleRate())
+				&& (format.getSampleSizeInBits()
+					== k.format.getSampleSizeInBits())
+				&& (format.getChannels() == k.format.getChannels())
+				&& (format.getFrameSize() == k.format.getFrameSize())
+				&& (format.getFrameRate() == k.format.getFrameRate())
+				&& ((format.getSampleSizeInBits() <= 8)
+					|| (format.isBigEndian() == k.format.isBigEndian()));
+		}
+
+		@Override
+		public int hashCode() {
+			return ((format.getEncoding().hashCode() * 31
+				+ Float.floatToIntBits(format.getSampleRate())) * 31
+				+ format.getSampleSizeInBits() * 8 + format.getChannels()) * 31
+				+ bufferSize;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package eden.wavplay.common;
+
+import java.util.Arrays;
+
+/** The {@code GDMLoadResult} class holds the outcome of a batch load. Each
+	resource maps to either a channel number or the exception its load failed
+	with, in the order the resources were given.
+
+	@author     Brendon
+	@version    u0r0, 10/18/2026
+*/
+public class GDMLoadResult {
+
+	/** Channel numbers in input order, -1 where the load failed or is yet
+		to finish
+	*/
+	private final int[] channels;
+
+	/** Exceptions in input order, null where the load succeeded */
+	private final Exception[] errors;
+
+
+	/** Constructs a new instance of this class for a number of resources
+
+		@param      size
+					Number of resources in the batch
+	*/
+	GDMLoadResult(int size) {
+		this.channels = new int[size];
+		this.errors = new Exception[size];
+		Arrays.fill(channels, -1);
+	}
+
+
+	/** Returns the number of resources in the batch
+		@return     Number of resources
+	*/
+	public int size() {
+		return channels.length;
+	}
+
+	/** Returns the channel number a resource was loaded to
+
+		@param      index
+					Index of the resource in the batch
+
+		@return     -1 if the load failed;
+					otherwise returns the channel number
+	*/
+	public int getChannel(int index) {
+		return channels[index];
+	}
+
+	/** Returns the exception the load of a resource failed with
+
+		@param      index
+					Index of the resource in the batch
+
+		@return     null if the load succeeded;
+					otherwise returns the exception
+	*/
+	public Exception getError(int index) {
+		return errors[index];
+	}
+
+	/** Returns the channel numbers in input order
+		@return     Copy of the channel numbers, -1 where the load failed
+	*/
+	public int[] getChannels() {
+		return channels.clone();
+	}
+
+	/** Returns the number of loads that failed
+		@return     Number of errors
+	*/
+	public int getErrorCount() {
+		int out = 0;
+
+		for (Exception e : errors) {
+
+			if (e != null) {
+				out++;
+			}
+		}
+		return out;
+	}
+
+
+	/** Records a successful load
+
+		@param      index
+					Index of the resource in the batch
+
+		@param      channel
+					Channel number the resource was loaded to
+	*/
+	void set(int index, int channel) {
+		channels[index] = channel;
+	}
+
+	/** Records a failed load
+
+		@param      index
+					Index of the resource in the batch
+
+		@param      e
+					Exception the load failed with
+	*/
+	void fail(int index, Exception e) {
+		channels[index] = -1;
+		errors[index] = e;
+	}
+}
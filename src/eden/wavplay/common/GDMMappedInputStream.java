@@ -0,0 +1,167 @@
+package eden.wavplay.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** The {@code GDMMappedInputStream} class reads a region of a file through
+	memory mapping. Audio data is copied once, from the mapped region straight
+	into the buffer of the reader, without passing through any intermediate
+	heap buffer or system call per read.
+	<br><br>
+	Regions larger than what a single {@code MappedByteBuffer} can address are
+	mapped in consecutive windows. Marking is supported at no cost as it only
+	records a position, so any {@code readlimit} is honored.
+
+	@author     Brendon
+	@version    u0r0, 10/18/2026
+*/
+public class GDMMappedInputStream extends InputStream {
+
+	/** Maximum size of a mapped window in bytes */
+	public static final int WINDOW_SIZE = 1 << 30;
+
+
+	/** File channel from which the region is mapped */
+	private final FileChannel channel;
+
+	/** Mapped windows of the region in order */
+	private final MappedByteBuffer[] windows;
+
+	/** Length of the region in bytes */
+	private final long length;
+
+	/** Current position relative to the start of the region */
+	private long position;
+
+	/** Marked position relative to the start of the region */
+	private long mark;
+
+
+	/** Constructs a new instance of this class that maps a region of a file
+
+		@param      channel
+					File channel from which the region is to be mapped
+
+		@param      offset
+					Start of the region in bytes
+
+		@param      length
+					Length of the region in bytes
+
+		@throws     IOException
+					If an I/O error occurs while mapping
+
+		@throws     IllegalArgumentException
+					If {@code offset < 0} or {@code length < 0}
+	*/
+	public GDMMappedInputStream(FileChannel channel, long offset, long length)
+		throws IOException {
+
+		if (offset < 0) {
+			throw new IllegalArgumentException("Bad offset: " + offset);
+		}
+
+		if (length < 0) {
+			throw new IllegalArgumentException("Bad length: " + length);
+		}
+
+		// channel
+		this.channel = channel;
+
+		// windows
+		this.windows = new MappedByteBuffer[
+			(int) ((length + WINDOW_SIZE - 1) / WINDOW_SIZE)];
+
+		for (int i = 0; i < windows.length; i++) {
+			long start = (long) i * WINDOW_SIZE;
+
+			windows[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+				offset + start, Math.min(WINDOW_SIZE, length - start));
+		}
+
+		// length
+		this.length = length;
+	}
+
+
+	@Override
+	public int read() throws IOException {
+
+		if (position >= length) {
+			return -1;
+		}
+		MappedByteBuffer window = windows[(int) (position / WINDOW_SIZE)];
+		return window.get((int) (position++ % WINDOW_SIZE)) & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+
+		if ((off < 0) || (len < 0) || (len > b.length - off)) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		if (len == 0) {
+			return 0;
+		}
+
+		if (position >= length) {
+			return -1;
+		}
+		int out = (int) Math.min(len, length - position);
+		int done = 0;
+
+		while (done < out) {
+			MappedByteBuffer window = windows[(int) (position / WINDOW_SIZE)];
+			int index = (int) (position % WINDOW_SIZE);
+			int bytes = Math.min(out - done, window.limit() - index);
+
+			window.position(index);
+			window.get(b, off + done, bytes);
+			done += bytes;
+			position += bytes;
+		}
+		return out;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+
+		if (n <= 0) {
+			return 0;
+		}
+		long out = Math.min(n, length - position);
+		position += out;
+		return out;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(Integer.MAX_VALUE, length - position);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		mark = position;
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		position = mark;
+	}
+
+	/** Closes the underlying file channel. Mapped windows are released once
+		they are no longer reachable
+	*/
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
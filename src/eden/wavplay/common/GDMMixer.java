@@ -0,0 +1,493 @@
+package eden.wavplay.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/** The {@code GDMMixer} class renders any number of {@code GDMAudio} channels
+	into a single line on a single thread. Channels are summed in a 32-bit
+	fixed-point accumulator and saturated on output, so the number of channels
+	playing at once is bound by processor time rather than by how many lines
+	the device can open.
+	<br><br>
+	Every channel is expected to be in the mix format. The mix format is
+	16-bit signed PCM of any rate, channel count and byte order. As rendering
+	is done in blocks, a successor picks up right after the last sample of the
+	channel it follows, and channels called together start on the same
+	sample.
+	<br><br>
+	Channels may also be cued to start on a given frame of the output. Cues
+	are kept in a heap ordered by frame, owned by the render thread, and a
+	channel due within a block starts right on its frame within it. A cue
+	on a frame already rendered is refused rather than started late.
+	<br><br>
+	Calling and cueing channels are posted as commands to a
+	{@code GDMCommandQueue} and applied by the render thread at the start of
+	the next block, in the order they were posted. Callers never wait on the
+	render thread. Pausing and closing need no command, as the render thread
+	drops channels that left {@code GDMAudio.State.PLAYING} by the next block.
+
+	@author     Brendon
+	@version    u0r0, 10/18/2026
+*/
+class GDMMixer implements Runnable {
+
+	/** Most commands awaiting the render thread */
+	public static final int COMMAND_CAPACITY = 4096;
+
+	/** Blocks the line buffers without a target latency, so that rendering
+		runs only a few blocks ahead of playback
+	*/
+	public static final int LINE_BLOCKS = 4;
+
+
+	/** Defines mix parameters */
+	private final AudioFormat format;
+
+	/** Data line to write mixed audio data to */
+	private final SourceDataLine line;
+
+	/** Amount of audio data rendered per block in bytes */
+	private final int blockSize;
+
+	/** Paces writes to the line, or null */
+	private final GDMPacer pacer;
+
+	/** Temporary medium for channel audio data */
+	private final byte[] buffer;
+
+	/** Temporary medium for mixed audio data */
+	private final byte[] output;
+
+	/** Accumulator of mixed samples */
+	private final int[] mix;
+
+	/** Commands yet to be applied by the render thread */
+	private final GDMCommandQueue<Runnable> commands;
+
+	/** Channels being rendered. Accessed by the render thread only */
+	private final ArrayList<GDMAudio> active;
+
+	/** Cues in order of frame. Accessed by the render thread only */
+	private final PriorityQueue<Cue> schedule;
+
+	/** Orders cues of the same frame by arrival. Accessed by the render
+		thread only
+	*/
+	private long sequence;
+
+	/** Output frame the next block starts on. Accessed by the render thread
+		only
+	*/
+	private long rendered;
+
+	/** Earliest output frame a cue posted now is applied in time for.
+		Written by the render thread only
+	*/
+	private volatile long horizon;
+
+	/** Denotes whether this {@code GDMMixer} is open */
+	private volatile boolean running;
+
+
+	/** Constructs a new instance of this class and opens its line
+
+		@param      format
+					{@code AudioFormat} defining mix parameters
+
+		@param      pacer
+					Sizes blocks and paces writes after a target latency, or
+					null to render blocks of {@code GDMAudio.BUFFER_SIZE} as
+					fast as the line takes
+
+		@throws     LineUnavailableException
+					If a line can not be opened because it is unavailable
+
+		@throws     IllegalArgumentException
+					If the mix format is unsupported
+	*/
+	GDMMixer(AudioFormat format, GDMPacer pacer)
+		throws LineUnavailableException {
+
+		if (!AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding())
+			|| (format.getSampleSizeInBits() != 16)) {
+
+			throw new IllegalArgumentException("Bad mix format: " + format);
+		}
+
+		// format
+		this.format = format;
+
+		// blockSize
+		this.blockSize = (pacer != null) ? pacer.getChunkSize()
+			: GDMAudio.BUFFER_SIZE / format.getFrameSize()
+				* format.getFrameSize();
+
+		// buffers
+		this.buffer = new byte[blockSize];
+		this.output = new byte[blockSize];
+		this.mix = new int[blockSize / 2];
+
+		// channels
+		this.commands = new GDMCommandQueue<>(COMMAND_CAPACITY);
+		this.active = new ArrayList<>();
+
+		// cues
+		this.schedule = new PriorityQueue<>();
+
+		// line
+		this.line = AudioSystem.getSourceDataLine(format);
+
+		if (pacer != null) {
+			line.open(format, pacer.getBufferSize());
+		} else {
+			line.open(format, LINE_BLOCKS * blockSize);
+		}
+		this.pacer = pacer;
+		this.running = true;
+	}
+
+
+	/** Renders channels until this {@code GDMMixer} is closed */
+	@Override
+	public void run() {
+
+		try {
+			line.start();
+
+			while (running) {
+				Runnable command;
+				GDMAudio audio;
+
+				// commands posted from now on miss this block
+				horizon = rendered + blockSize / format.getFrameSize();
+
+				// applied at block boundaries only
+				while ((command = commands.poll()) != null) {
+					command.run();
+				}
+				Arrays.fill(mix, 0);
+
+				for (int i = active.size() - 1; i >= 0; i--) {
+					audio = active.get(i);
+
+					if (audio.isFree() || audio.isClosed()) {
+						remove(i);
+						continue;
+					}
+					render(i, audio, 0);
+				}
+				cue();
+				saturate();
+
+				if (pacer != null) {
+					pacer.pace(line);
+				}
+				line.write(output, 0, blockSize);
+			}
+		} catch (Exception e) {
+
+			// a line closed under a write is expected on close
+			if (running) {
+				System.err.println("[GDMAudioEngine]\n  Thread "
+					+ Thread.currentThread().toString() + " caught exception: "
+					+ e.toString());
+			}
+		}
+	}
+
+	/** Calls a channel for playback. The channel must have been marked as
+		started beforehand
+
+		@param      audio
+					Channel to be rendered
+
+		@return     false if the command queue is full, in which case
+					nothing is done;
+					true otherwise
+	*/
+	boolean add(GDMAudio audio) {
+		return post(() -> activate(audio));
+	}
+
+	/** Calls channels for playback together, starting them on the same
+		sample. The channels must have been marked as started beforehand
+
+		@param      group
+					Channels to be rendered
+
+		@return     false if the command queue is full, in which case
+					nothing is done;
+					true otherwise
+	*/
+	boolean add(GDMAudio[] group) {
+		return post(() -> {
+
+			for (GDMAudio member : group) {
+				activate(member);
+			}
+		});
+	}
+
+	/** Cues a channel to start on a frame of the output. The channel must
+		have been marked as started beforehand. The cue is dropped if the
+		channel is paused or started again before it is due. A frame behind
+		{@code getRenderFrame} is refused. Should the render thread pass the
+		frame before the cue reaches it, the channel is paused instead of
+		started late
+
+		@param      audio
+					Channel to be rendered
+
+		@param      frame
+					Output frame to start on
+
+		@return     false if the frame is behind {@code getRenderFrame} or
+					the command queue is full, in which case nothing is done;
+					true otherwise
+	*/
+	boolean add(GDMAudio audio, long frame) {
+
+		if (frame < horizon) {
+			return false;
+		}
+		final long generation = audio.getGeneration();
+		return post(() ->
+			schedule.add(new Cue(frame, sequence++, generation, audio)));
+	}
+
+	/** Returns the earliest output frame a channel may be cued on. Rendering
+		runs ahead of playback by the line buffer, so this is ahead of
+		{@code getFramePosition} by about as much
+
+		@return     Output frame
+	*/
+	long getRenderFrame() {
+		return horizon;
+	}
+
+	/** Returns the output frame being played, counted from the first frame
+		written to the line. It is the frame a channel cued on it is heard, as
+		long as the line does not run dry
+
+		@return     Output frame
+	*/
+	long getFramePosition() {
+		return line.getLongFramePosition();
+	}
+
+	/** Stops rendering and releases the line. The render thread exits
+		within a block
+	*/
+	void close() {
+		running = false;
+		line.close();
+	}
+
+
+	// helper methods
+
+	/** Posts a command to be applied by the render thread
+
+		@param      command
+					Command to be applied
+
+		@return     false if the command queue is full or this
+					{@code GDMMixer} is closed, in which case nothing is done;
+					true otherwise
+	*/
+	private boolean post(Runnable command) {
+		return running && commands.offer(command);
+	}
+
+	/** Makes a channel active unless it already is
+
+		@param      audio
+					Channel to be rendered
+	*/
+	private void activate(GDMAudio audio) {
+
+		if (!active.contains(audio)) {
+			active.add(audio);
+		}
+	}
+
+	/** Starts the cued channels due within the block being rendered, each on
+		its frame, and advances the output frame to the next block
+	*/
+	private void cue() {
+		final int frameSize = format.getFrameSize();
+		final long end = rendered + blockSize / frameSize;
+		Cue cue;
+
+		while (!schedule.isEmpty() && (schedule.peek().frame < end)) {
+			cue = schedule.poll();
+
+			// paused, closed or called otherwise meanwhile
+			if (cue.audio.isFree() || cue.audio.isClosed()
+				|| (cue.generation != cue.audio.getGeneration())
+				|| active.contains(cue.audio)) {
+
+				continue;
+			}
+			// passed before the cue arrived, not to be started late
+			if (cue.frame < rendered) {
+				cue.audio.stop();
+				continue;
+			}
+			active.add(cue.audio);
+			render(active.size() - 1, cue.audio,
+				(int) (cue.frame - rendered) * frameSize);
+		}
+		rendered = end;
+	}
+
+	/** Renders a block of an active channel into the accumulator. If the
+		channel ends within the block, its successor continues right from the
+		next sample and takes its place
+
+		@param      i
+					Index of the channel
+
+		@param      audio
+					Channel to be rendered
+
+		@param      from
+					Offset in the block to start on in bytes
+	*/
+	private void render(int i, GDMAudio audio, int from) {
+		int done = from;
+
+		while (true) {
+			final int bytes = audio.read(buffer, done, blockSize - done);
+
+			if (bytes > 0) {
+				accumulate(done, bytes);
+				done += bytes;
+
+				if (done == blockSize) {
+					return;
+				}
+				continue;
+			}
+
+			// read-ahead ran dry, the rest of the block is left silent
+			if (bytes == 0) {
+				return;
+			}
+			final GDMAudio next = audio.takeSuccessor();
+
+			// started first so that there is no moment where neither plays
+			if ((next == null) || !next.start()) {
+				audio.end();
+				remove(i);
+				return;
+			}
+			audio.end();
+			audio = next;
+			active.set(i, audio);
+		}
+	}
+
+	/** Adds channel audio data to the accumulator
+
+		@param      off
+					Offset of the valid bytes in the channel buffer
+
+		@param      bytes
+					Number of valid bytes in the channel buffer
+	*/
+	private void accumulate(int off, int bytes) {
+		final int end = (off + bytes) / 2;
+
+		if (format.isBigEndian()) {
+
+			for (int i = off / 2, j = off; i < end; i++, j += 2) {
+				mix[i] += (buffer[j] << 8) | (buffer[j + 1] & 0xFF);
+			}
+		} else {
+
+			for (int i = off / 2, j = off; i < end; i++, j += 2) {
+				mix[i] += (buffer[j + 1] << 8) | (buffer[j] & 0xFF);
+			}
+		}
+	}
+
+	/** Clips the accumulator into the output buffer */
+	private void saturate() {
+		final boolean bigEndian = format.isBigEndian();
+
+		for (int i = 0, j = 0; i < mix.length; i++, j += 2) {
+			int sample = mix[i];
+
+			if (sample > Short.MAX_VALUE) {
+				sample = Short.MAX_VALUE;
+			} else if (sample < Short.MIN_VALUE) {
+				sample = Short.MIN_VALUE;
+			}
+
+			if (bigEndian) {
+				output[j] = (byte) (sample >> 8);
+				output[j + 1] = (byte) sample;
+			} else {
+				output[j] = (byte) sample;
+				output[j + 1] = (byte) (sample >> 8);
+			}
+		}
+	}
+
+	/** Removes an active channel in constant time
+
+		@param      i
+					Index of the channel
+	*/
+	private void remove(int i) {
+		final int last = active.size() - 1;
+		active.set(i, active.get(last));
+		active.remove(last);
+	}
+
+
+	// helper classes
+
+	/** A {@code Cue} is a channel to start on a frame of the output */
+	private static class Cue implements Comparable<Cue> {
+
+		/** Output frame to start on */
+		private final long frame;
+
+		/** Order of arrival */
+		private final long sequence;
+
+		/** Playback of the channel the cue was made for */
+		private final long generation;
+
+		/** Channel to be rendered */
+		private final GDMAudio audio;
+
+
+		/** Constructs a new instance of this class */
+		private Cue(long frame, long sequence, long generation,
+			GDMAudio audio) {
+
+			this.frame = frame;
+			this.sequence = sequence;
+			this.generation = generation;
+			this.audio = audio;
+		}
+
+
+		@Override
+		public int compareTo(Cue other) {
+
+			if (frame != other.frame) {
+				return (frame < other.frame) ? -1 : 1;
+			}
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+}
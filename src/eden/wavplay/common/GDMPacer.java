@@ -0,0 +1,162 @@
+package eden.wavplay.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.SourceDataLine;
+
+/** The {@code GDMPacer} class sizes buffers after a target latency and keeps
+	the amount of audio data queued in a line close to it. Sizes are derived
+	from the frame size and rate, so a given latency holds for any format.
+	<br><br>
+	The queued amount adapts at runtime. It grows whenever the line is found
+	to have run dry, up to a fixed multiple of the target, and shrinks back
+	towards the target for as long as the line stays healthy.
+
+	@author     Brendon
+	@version    u0r0, 10/18/2026
+*/
+class GDMPacer {
+
+	/** Multiple of the target latency the queued amount may grow to */
+	public static final int GROWTH = 4;
+
+
+	/** Amount of audio data per read and write in bytes */
+	private final int chunkSize;
+
+	/** Buffer size of the line in bytes */
+	private final int bufferSize;
+
+	/** Least amount of audio data to keep queued in bytes */
+	private final int minFill;
+
+	/** Most amount of audio data to keep queued in bytes */
+	private final int maxFill;
+
+	/** Amount of audio data per millisecond in bytes */
+	private final float bytesPerMilli;
+
+	/** Number of healthy writes spanning a second, after which to shrink */
+	private final int shrinkWrites;
+
+	/** Counts the times a line was found to have run dry */
+	private final AtomicLong underruns;
+
+	/** Amount of audio data to keep queued in bytes */
+	private int fill;
+
+	/** Number of consecutive healthy writes */
+	private int healthy;
+
+	/** Denotes whether the line has been written to since it was started */
+	private boolean primed;
+
+
+	/** Constructs a new instance of this class for a given format and target
+		latency
+
+		@param      format
+					{@code AudioFormat} defining audio parameters
+
+		@param      latency
+					Target latency in milliseconds
+
+		@param      underruns
+					Counts the times a line was found to have run dry, which
+					may be shared between instances
+
+		@throws     IllegalArgumentException
+					If {@code latency <= 0}
+	*/
+	GDMPacer(AudioFormat format, int latency, AtomicLong underruns) {
+
+		if (latency <= 0) {
+			throw new IllegalArgumentException("Bad latency: " + latency);
+		}
+		final int frameSize = Math.max(format.getFrameSize(), 1);
+		final int target = bytes(format, latency);
+
+		this.chunkSize =
+			Math.max(frameSize, target / 4 / frameSize * frameSize);
+		this.minFill = Math.max(chunkSize, target - chunkSize);
+		this.maxFill = minFill * GROWTH;
+		this.bufferSize = maxFill + 2 * chunkSize;
+		this.bytesPerMilli = format.getFrameRate() * frameSize / 1000f;
+		this.shrinkWrites =
+			Math.max(1, (int) (bytesPerMilli * 1000 / chunkSize));
+		this.underruns = underruns;
+		this.fill = minFill;
+	}
+
+
+	/** Returns an amount of audio data spanning a duration, in whole frames
+
+		@param      format
+					{@code AudioFormat} defining audio parameters
+
+		@param      millis
+					Duration in milliseconds
+
+		@return     Amount of audio data in bytes, at least one frame
+	*/
+	static int bytes(AudioFormat format, int millis) {
+		final int frameSize = Math.max(format.getFrameSize(), 1);
+
+		final long frames =
+			Math.max(1, (long) (format.getFrameRate() * millis / 1000));
+
+		return (int) Math.min(Integer.MAX_VALUE / 2 / frameSize * frameSize,
+			frames * frameSize);
+	}
+
+	/** Waits until the line queues less than the current fill, adapting it
+		first. Called right before each write by the writing thread only
+
+		@param      line
+					Line about to be written to
+	*/
+	void pace(SourceDataLine line) {
+		int queued = line.getBufferSize() - line.available();
+
+		if (primed && (queued <= 0)) {
+			underruns.incrementAndGet();
+			fill = Math.min(maxFill, fill * 2);
+			healthy = 0;
+			return;
+		}
+		primed = true;
+
+		if ((++healthy >= shrinkWrites) && (fill > minFill)) {
+			fill = Math.max(minFill, fill - fill / 4);
+			healthy = 0;
+		}
+
+		while ((queued > fill) && line.isRunning()) {
+			LockSupport.parkNanos((long) ((queued - fill) / bytesPerMilli
+				* 1000000));
+			queued = line.getBufferSize() - line.available();
+		}
+	}
+
+	/** Forgets that the line has been written to, as when it is stopped, so
+		that the next write is not taken for an underrun
+	*/
+	void unprime() {
+		primed = false;
+	}
+
+	/** Returns the amount of audio data per read and write
+		@return     Chunk size in bytes
+	*/
+	int getChunkSize() {
+		return chunkSize;
+	}
+
+	/** Returns the buffer size to open lines with
+		@return     Buffer size in bytes
+	*/
+	int getBufferSize() {
+		return bufferSize;
+	}
+}
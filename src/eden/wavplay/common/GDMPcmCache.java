@@ -0,0 +1,276 @@
+package eden.wavplay.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+/** The {@code GDMPcmCache} class keeps decoded audio data of files in memory
+	within a budget in bytes, so that loading the same file again involves no
+	I/O. Files are identified by their canonical path, size and modification
+	time, hence a file that changes is not served stale. Audio data is kept in
+	{@code GDMSampleBuffer}s off the heap.
+	<br><br>
+	When the budget is exceeded, the least recently used files are evicted.
+	Hits, misses and evictions are counted to aid sizing.
+
+	@author     Brendon
+	@version    u0r0, 10/18/2026
+*/
+class GDMPcmCache {
+
+	/** Cached files, in order of least recent use */
+	private final LinkedHashMap<Key, Entry> entries;
+
+	/** Maximum number of bytes resident */
+	private long budget;
+
+	/** Number of bytes resident */
+	private long bytes;
+
+	/** Number of loads served from memory */
+	private long hits;
+
+	/** Number of loads not served from memory */
+	private long misses;
+
+	/** Number of files evicted */
+	private long evictions;
+
+
+	/** Constructs a new instance of this class with a given budget
+
+		@param      budget
+					Maximum number of bytes resident
+
+		@throws     IllegalArgumentException
+					If {@code budget < 0}
+	*/
+	GDMPcmCache(long budget) {
+
+		if (budget < 0) {
+			throw new IllegalArgumentException("Bad budget: " + budget);
+		}
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+		this.budget = budget;
+	}
+
+
+	/** Opens the cached audio data of a file
+
+		@param      file
+					File whose audio data is to be opened
+
+		@return     null if the file is not cached;
+					otherwise returns an {@code AudioInputStream} reading from
+					memory
+
+		@throws     IOException
+					If the canonical path can not be resolved
+	*/
+	AudioInputStream open(File file) throws IOException {
+		final Key key = new Key(file);
+
+		synchronized (this) {
+			final Entry entry = entries.get(key);
+
+			if (entry == null) {
+				misses++;
+				return null;
+			}
+			hits++;
+			return entry.open();
+		}
+	}
+
+	/** Caches the audio data of a file, evicting others as needed. Audio data
+		larger than the budget is not cached, in which case its storage is
+		freed once the returned stream is closed
+
+		@param      file
+					File the audio data was read from
+
+		@param      format
+					{@code AudioFormat} of the audio data
+
+		@param      data
+					Audio data, freed by this {@code GDMPcmCache} from then on
+
+		@return     {@code AudioInputStream} reading from {@code data}
+
+		@throws     IOException
+					If the canonical path can not be resolved
+	*/
+	AudioInputStream put(File file, AudioFormat format, GDMSampleBuffer data)
+		throws IOException {
+
+		final Key key = new Key(file);
+		final Entry entry = new Entry(format, data);
+
+		synchronized (this) {
+
+			if (data.length() <= budget) {
+				final Entry old = entries.put(key, entry);
+
+				if (old != null) {
+					bytes -= old.data.length();
+					old.data.free();
+				}
+				bytes += data.length();
+				final AudioInputStream out = entry.open();
+				trim();
+				return out;
+			}
+		}
+		final AudioInputStream out = entry.open();
+		data.free();
+		return out;
+	}
+
+	/** Sets the maximum number of bytes resident, evicting files in excess
+
+		@param      budget
+					Maximum number of bytes resident
+
+		@throws     IllegalArgumentException
+					If {@code budget < 0}
+	*/
+	synchronized void setBudget(long budget) {
+
+		if (budget < 0) {
+			throw new IllegalArgumentException("Bad budget: " + budget);
+		}
+		this.budget = budget;
+		trim();
+	}
+
+	/** Returns the maximum number of bytes resident
+		@return     Budget in bytes
+	*/
+	synchronized long getBudget() {
+		return budget;
+	}
+
+	/** Returns the number of bytes resident
+		@return     Bytes resident
+	*/
+	synchronized long getBytes() {
+		return bytes;
+	}
+
+	/** Returns the number of loads served from memory
+		@return     Hits
+	*/
+	synchronized long getHits() {
+		return hits;
+	}
+
+	/** Returns the number of loads not served from memory
+		@return     Misses
+	*/
+	synchronized long getMisses() {
+		return misses;
+	}
+
+	/** Returns the number of files evicted
+		@return     Evictions
+	*/
+	synchronized long getEvictions() {
+		return evictions;
+	}
+
+
+	// helper methods
+
+	/** Evicts the least recently used files until within budget */
+	private void trim() {
+		final Iterator<Map.Entry<Key, Entry>> it =
+			entries.entrySet().iterator();
+
+		while ((bytes > budget) && it.hasNext()) {
+			final GDMSampleBuffer data = it.next().getValue().data;
+
+			bytes -= data.length();
+			data.free();
+			it.remove();
+			evictions++;
+		}
+	}
+
+
+	// helper classes
+
+	/** A {@code Key} identifies a file as of its size and modification time */
+	private static class Key {
+
+		/** Canonical path */
+		private final String path;
+
+		/** Size in bytes */
+		private final long length;
+
+		/** Modification time */
+		private final long modified;
+
+
+		/** Constructs a new instance of this class for a given file
+
+			@throws     IOException
+						If the canonical path can not be resolved
+		*/
+		private Key(File file) throws IOException {
+			this.path = file.getCanonicalPath();
+			this.length = file.length();
+			this.modified = file.lastModified();
+		}
+
+
+		@Override
+		public boolean equals(Object o) {
+
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			final Key k = (Key) o;
+
+			return path.equals(k.path)
+				&& (length == k.length)
+				&& (modified == k.modified);
+		}
+
+		@Override
+		public int hashCode() {
+			return (path.hashCode() * 31 + Long.hashCode(length)) * 31
+				+ Long.hashCode(modified);
+		}
+	}
+
+	/** An {@code Entry} is the cached audio data of a file */
+	private static class Entry {
+
+		/** Defines audio parameters */
+		private final AudioFormat format;
+
+		/** Audio data */
+		private final GDMSampleBuffer data;
+
+
+		/** Constructs a new instance of this class */
+		private Entry(AudioFormat format, GDMSampleBuffer data) {
+			this.format = format;
+			this.data = data;
+		}
+
+
+		/** Opens an {@code AudioInputStream} reading from the audio data
+			@return     {@code AudioInputStream}
+		*/
+		private AudioInputStream open() {
+			return new AudioInputStream(data.open(), format,
+				data.length() / format.getFrameSize());
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package eden.wavplay.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** The {@code GDMRingBuffer} class is a preallocated, lock-free byte queue
+	between exactly one producer thread and one consumer thread. Neither side
+	ever blocks; both return the number of bytes they could transfer, leaving
+	it to the caller to decide how to wait.
+	<br><br>
+	The producer signals the end of its data with {@code finish}. Clearing is
+	only safe while neither side is active.
+
+	@author     Brendon
+	@version    u0r0, 10/18/2026
+*/
+class GDMRingBuffer {
+
+	/** Storage, its length a power of two */
+	private final byte[] data;
+
+	/** Mask to wrap positions into the storage */
+	private final int mask;
+
+	/** Total number of bytes consumed. Written by the consumer only */
+	private final AtomicLong head;
+
+	/** Total number of bytes produced. Written by the producer only */
+	private final AtomicLong tail;
+
+	/** Denotes whether the producer has no more data */
+	private volatile boolean finished;
+
+
+	/** Constructs a new instance of this class with a given minimum capacity
+
+		@param      capacity
+					Minimum capacity in bytes, rounded up to a power of two
+
+		@throws     IllegalArgumentException
+					If {@code capacity <= 0} or {@code capacity > 2^30}
+	*/
+	GDMRingBuffer(int capacity) {
+
+		if ((capacity <= 0) || (capacity > (1 << 30))) {
+			throw new IllegalArgumentException("Bad capacity: " + capacity);
+		}
+		this.data = new byte[(capacity == 1)
+			? 1 : (Integer.highestOneBit(capacity - 1) << 1)];
+		this.mask = data.length - 1;
+		this.head = new AtomicLong();
+		this.tail = new AtomicLong();
+	}
+
+
+	/** Produces up to an amount of bytes. Called by the producer only
+
+		@param      b
+					Buffer to copy from
+
+		@param      off
+					Offset in the buffer
+
+		@param      len
+					Number of bytes to produce
+
+		@return     Number of bytes produced, 0 if the buffer is full
+	*/
+	int offer(byte[] b, int off, int len) {
+		final long t = tail.get();
+		final int out = (int) Math.min(len, data.length - (t - head.get()));
+
+		if (out > 0) {
+			copy(b, off, out, (int) (t & mask), true);
+			tail.lazySet(t + out);
+		}
+		return out;
+	}
+
+	/** Consumes up to an amount of bytes. Called by the consumer only
+
+		@param      b
+					Buffer to copy into
+
+		@param      off
+					Offset in the buffer
+
+		@param      len
+					Number of bytes to consume
+
+		@return     Number of bytes consumed, 0 if the buffer is empty
+	*/
+	int poll(byte[] b, int off, int len) {
+		final long h = head.get();
+		final int out = (int) Math.min(len, tail.get() - h);
+
+		if (out > 0) {
+			copy(b, off, out, (int) (h & mask), false);
+			head.lazySet(h + out);
+		}
+		return out;
+	}
+
+	/** Discards up to an amount of bytes. Called by the consumer only
+
+		@param      len
+					Number of bytes to discard
+
+		@return     Number of bytes discarded
+	*/
+	long skip(long len) {
+		final long h = head.get();
+		final long out = Math.min(len, tail.get() - h);
+
+		if (out > 0) {
+			head.lazySet(h + out);
+		}
+		return out;
+	}
+
+	/** Signals that the producer has no more data. Called by the producer
+		only
+	*/
+	void finish() {
+		finished = true;
+	}
+
+	/** Empties this {@code GDMRingBuffer} and clears its end of data. Neither
+		side may be active
+	*/
+	void clear() {
+		head.set(tail.get());
+		finished = false;
+	}
+
+	/** Returns the number of bytes that can be consumed
+		@return     Size in bytes
+	*/
+	int size() {
+		return (int) (tail.get() - head.get());
+	}
+
+	/** Returns the number of bytes that can be held
+		@return     Capacity in bytes
+	*/
+	int capacity() {
+		return data.length;
+	}
+
+	/** Returns whether the producer has finished
+		@return     true if the condition is true;
+					false otherwise
+	*/
+	boolean isFinished() {
+		return finished;
+	}
+
+
+	// helper methods
+
+	/** Copies between a buffer and the storage, wrapping around its end
+
+		@param      b
+					Buffer
+
+		@param      off
+					Offset in the buffer
+
+		@param      len
+					Number of bytes to copy
+
+		@param      index
+					Index in the storage
+
+		@param      in
+					Whether to copy into the storage
+	*/
+	private void copy(byte[] b, int off, int len, int index, boolean in) {
+		final int first = Math.min(len, data.length - index);
+
+		if (in) {
+			System.arraycopy(b, off, data, index, first);
+			System.arraycopy(b, off + first, data, 0, len - first);
+		} else {
+			System.arraycopy(data, index, b, off, first);
+			System.arraycopy(data, 0, b, off + first, len - first);
+		}
+	}
+}
@@ -0,0 +1,359 @@
+package eden.wavplay.common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/** The {@code GDMSampleBuffer} class stores audio data outside of the heap,
+	so that sample banks of any size add next to nothing to garbage collection.
+	Each reader it hands out is a stream holding only its own position, from
+	which a {@code GDMAudio} plays directly.
+	<br><br>
+	Memory is allocated from a shared {@code Arena} of the Foreign Memory API
+	where the runtime provides one, and is then released as soon as it is freed
+	and no reader is left open. Otherwise, direct {@code ByteBuffer}s are used,
+	which are released once they are no longer reachable. Storage larger than
+	what a single {@code ByteBuffer} can address is split in consecutive
+	windows.
+
+	@author     Brendon
+	@version    u0r0, 10/18/2026
+*/
+class GDMSampleBuffer {
+
+	/** Maximum size of a window in bytes */
+	public static final int WINDOW_SIZE = GDMMappedInputStream.WINDOW_SIZE;
+
+	/** Amount of audio data copied in at a time in bytes */
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	/** {@code Arena.ofShared}, or null if unsupported */
+	private static final Method OF_SHARED;
+
+	/** {@code Arena.allocate} */
+	private static final Method ALLOCATE;
+
+	/** {@code Arena.close} */
+	private static final Method CLOSE;
+
+	/** {@code MemorySegment.asSlice} */
+	private static final Method AS_SLICE;
+
+	/** {@code MemorySegment.asByteBuffer} */
+	private static final Method AS_BYTE_BUFFER;
+
+	static {
+		Method ofShared = null;
+		Method allocate = null;
+		Method close = null;
+		Method asSlice = null;
+		Method asByteBuffer = null;
+
+		try {
+			final Class<?> arena = Class.forName("java.lang.foreign.Arena");
+			final Class<?> segment =
+				Class.forName("java.lang.foreign.MemorySegment");
+
+			ofShared = arena.getMethod("ofShared");
+			allocate = arena.getMethod("allocate", long.class);
+			close = arena.getMethod("close");
+			asSlice = segment.getMethod("asSlice", long.class, long.class);
+			asByteBuffer = segment.getMethod("asByteBuffer");
+		} catch (ReflectiveOperationException | LinkageError e) {
+			ofShared = null;
+		}
+		OF_SHARED = ofShared;
+		ALLOCATE = allocate;
+		CLOSE = close;
+		AS_SLICE = asSlice;
+		AS_BYTE_BUFFER = asByteBuffer;
+	}
+
+
+	/** Windows of the storage in order */
+	private final ByteBuffer[] windows;
+
+	/** Length of the storage in bytes */
+	private final long length;
+
+	/** Arena the storage is allocated from, or null */
+	private final Object arena;
+
+	/** Number of readers open */
+	private int readers;
+
+	/** Denotes whether the owner has let go of the storage */
+	private boolean freed;
+
+
+	/** Constructs a new instance of this class and allocates its storage
+
+		@param      length
+					Length of the storage in bytes
+
+		@throws     IllegalArgumentException
+					If {@code length < 0}
+
+		@throws     OutOfMemoryError
+					If the storage can not be allocated
+	*/
+	GDMSampleBuffer(long length) {
+
+		if (length < 0) {
+			throw new IllegalArgumentException("Bad length: " + length);
+		}
+
+		// length
+		this.length = length;
+
+		// windows
+		this.windows = new ByteBuffer[
+			(int) ((length + WINDOW_SIZE - 1) / WINDOW_SIZE)];
+
+		// arena
+		this.arena = allocate();
+	}
+
+
+	/** Fills the storage from a stream
+
+		@param      in
+					Stream to read audio data from
+
+		@throws     IOException
+					If an I/O exception occurs
+
+		@throws     EOFException
+					If the stream ends before the storage is filled
+	*/
+	void readFrom(InputStream in) throws IOException {
+		final byte[] chunk = new byte[(int) Math.min(CHUNK_SIZE, length)];
+
+		for (ByteBuffer window : windows) {
+			final ByteBuffer out = window.duplicate();
+
+			while (out.hasRemaining()) {
+				final int bytes =
+					in.read(chunk, 0, Math.min(chunk.length, out.remaining()));
+
+				if (bytes < 0) {
+					throw new EOFException();
+				}
+				out.put(chunk, 0, bytes);
+			}
+		}
+	}
+
+	/** Opens a reader over the storage. The storage stays allocated for as
+		long as any reader is open
+
+		@return     Stream reading from the start of the storage
+
+		@throws     IllegalStateException
+					If the storage has been released
+	*/
+	synchronized InputStream open() {
+
+		if (freed && (readers == 0)) {
+			throw new IllegalStateException("Released");
+		}
+		readers++;
+		return new Reader();
+	}
+
+	/** Lets go of the storage. It is released once the last reader is closed,
+		or right away if none is open
+	*/
+	synchronized void free() {
+		freed = true;
+		release();
+	}
+
+	/** Returns the length of the storage
+		@return     Length in bytes
+	*/
+	long length() {
+		return length;
+	}
+
+
+	// helper methods
+
+	/** Allocates the windows, from an arena if supported
+
+		@return     Arena the windows are allocated from, or null
+	*/
+	private Object allocate() {
+
+		if (OF_SHARED != null) {
+
+			try {
+				final Object out = OF_SHARED.invoke(null);
+				final Object segment =
+					ALLOCATE.invoke(out, Math.max(1, length));
+
+				for (int i = 0; i < windows.length; i++) {
+					final long start = (long) i * WINDOW_SIZE;
+
+					windows[i] = (ByteBuffer) AS_BYTE_BUFFER.invoke(
+						AS_SLICE.invoke(segment, start,
+							Math.min(WINDOW_SIZE, length - start)));
+				}
+				return out;
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				// falls back to direct buffers
+			}
+		}
+
+		for (int i = 0; i < windows.length; i++) {
+			final long start = (long) i * WINDOW_SIZE;
+
+			windows[i] = ByteBuffer.allocateDirect(
+				(int) Math.min(WINDOW_SIZE, length - start));
+		}
+		return null;
+	}
+
+	/** Releases the storage if it has been freed and no reader is open */
+	private void release() {
+
+		if (!freed || (readers > 0) || (arena == null)) {
+			return;
+		}
+
+		try {
+			CLOSE.invoke(arena);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// already closed
+		}
+	}
+
+
+	// helper classes
+
+	/** A {@code Reader} is a stream over the storage with a position of its
+		own. Marking is supported at no cost as it only records a position
+	*/
+	private class Reader extends InputStream {
+
+		/** Windows of the storage with positions of their own */
+		private final ByteBuffer[] views;
+
+		/** Current position relative to the start of the storage */
+		private long position;
+
+		/** Marked position relative to the start of the storage */
+		private long mark;
+
+		/** Denotes whether this {@code Reader} is closed */
+		private boolean closed;
+
+
+		/** Constructs a new instance of this class */
+		private Reader() {
+			this.views = new ByteBuffer[windows.length];
+
+			for (int i = 0; i < views.length; i++) {
+				views[i] = windows[i].duplicate();
+			}
+		}
+
+
+		@Override
+		public int read() throws IOException {
+
+			if (closed) {
+				throw new IOException("Closed");
+			}
+
+			if (position >= length) {
+				return -1;
+			}
+			final ByteBuffer view = views[(int) (position / WINDOW_SIZE)];
+			return view.get((int) (position++ % WINDOW_SIZE)) & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+
+			if ((off < 0) || (len < 0) || (len > b.length - off)) {
+				throw new IndexOutOfBoundsException();
+			}
+
+			if (len == 0) {
+				return 0;
+			}
+
+			if (closed) {
+				throw new IOException("Closed");
+			}
+
+			if (position >= length) {
+				return -1;
+			}
+			final int out = (int) Math.min(len, length - position);
+			int done = 0;
+
+			while (done < out) {
+				final ByteBuffer view = views[(int) (position / WINDOW_SIZE)];
+				final int index = (int) (position % WINDOW_SIZE);
+				final int bytes = Math.min(out - done, view.limit() - index);
+
+				view.position(index);
+				view.get(b, off + done, bytes);
+				done += bytes;
+				position += bytes;
+			}
+			return out;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+
+			if (n <= 0) {
+				return 0;
+			}
+			final long out = Math.min(n, length - position);
+			position += out;
+			return out;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(Integer.MAX_VALUE, length - position);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public synchronized void mark(int readlimit) {
+			mark = position;
+		}
+
+		@Override
+		public synchronized void reset() throws IOException {
+			position = mark;
+		}
+
+		/** Closes this {@code Reader}, releasing the storage if it has been
+			freed and this is the last reader open
+		*/
+		@Override
+		public void close() throws IOException {
+
+			synchronized (GDMSampleBuffer.this) {
+
+				if (!closed) {
+					closed = true;
+					readers--;
+					release();
+				}
+			}
+		}
+	}
+}
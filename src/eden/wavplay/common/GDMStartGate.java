@@ -0,0 +1,95 @@
+package eden.wavplay.common;
+
+import javax.sound.sampled.SourceDataLine;
+
+/** The {@code GDMStartGate} class starts the lines of a group of channels
+	together. Each channel arrives with its line stopped and primed with its
+	first audio data, and the last to arrive starts every line back to back,
+	so that the group begins within microseconds rather than at the whim of
+	thread scheduling.
+	<br><br>
+	A channel that fails to arrive in time does not hold the others back
+	indefinitely. Those waiting start their own lines once the wait times out.
+
+	@author     Brendon
+	@version    u0r0, 10/18/2026
+*/
+class GDMStartGate {
+
+	/** Longest time to wait for the rest of the group in milliseconds */
+	public static final long TIMEOUT_MILLIS = 1000;
+
+
+	/** Lines of the members arrived so far */
+	private final SourceDataLine[] lines;
+
+	/** Number of members arrived so far */
+	private int arrived;
+
+	/** Denotes whether the lines have been started */
+	private boolean open;
+
+
+	/** Constructs a new instance of this class for a number of members
+
+		@param      members
+					Number of channels in the group
+	*/
+	GDMStartGate(int members) {
+		this.lines = new SourceDataLine[members];
+	}
+
+
+	/** Arrives with a primed line and waits for the rest of the group. The
+		line is running once this method returns
+
+		@param      line
+					Stopped line primed with audio data, or null if the
+					member has nothing to play
+	*/
+	synchronized void arrive(SourceDataLine line) {
+
+		if (open) {
+
+			if (line != null) {
+				line.start();
+			}
+			return;
+		}
+		lines[arrived++] = line;
+
+		if (arrived == lines.length) {
+
+			for (SourceDataLine member : lines) {
+
+				if (member != null) {
+					member.start();
+				}
+			}
+			open = true;
+			notifyAll();
+			return;
+		}
+		final long deadline = System.nanoTime() + TIMEOUT_MILLIS * 1000000;
+		boolean interrupted = false;
+		long left;
+
+		while (!open && ((left = deadline - System.nanoTime()) > 0)) {
+
+			try {
+				wait(left / 1000000, (int) (left % 1000000));
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		// gave up on the rest
+		if (!open && (line != null)) {
+			line.start();
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package eden.wavplay.common;
+
+/** The {@code GDMStealPolicy} enum lists the ways a {@code GDMAudioEngine}
+	may take over a busy channel when a load finds no free channel. A stolen
+	channel that is playing fades out over a few milliseconds before its
+	resources are released, while the channel goes to the load right away
+	under a new number. The old number no longer refers to it.
+	<br><br>
+	No channel of a higher priority than the load is ever stolen. Ties are
+	broken in favor of stealing the oldest channel.
+
+	@author     Brendon
+	@version    u0r0, 10/18/2026
+*/
+public enum GDMStealPolicy {
+
+	/** Never steal, a load fails without a free channel */
+	NONE,
+
+	/** Steal the channel that was loaded or last started the earliest */
+	OLDEST,
+
+	/** Steal the channel with the lowest peak level, idle ones first */
+	QUIETEST,
+
+	/** Steal the channel of the lowest priority */
+	LOWEST_PRIORITY
+}
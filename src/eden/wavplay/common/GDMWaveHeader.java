@@ -0,0 +1,542 @@
+package eden.wavplay.common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/** The {@code GDMWaveHeader} class parses the header of a RIFF/WAVE resource
+	in a single pass. Reading stops right at the start of the data chunk, so
+	the same {@code InputStream} can then be played from without reopening or
+	parsing it again.
+	<br><br>
+	Besides RIFF, the 64-bit variants RF64 and BW64, whose sizes are given by a
+	{@code ds64} chunk, and Sony Wave64 are supported. Offsets and lengths are
+	{@code long} throughout, so resources beyond 4 GB are read in full.
+
+	@author     Brendon
+	@version    u0r0, 10/18/2026
+*/
+public class GDMWaveHeader {
+
+	/** Denotes an unknown data chunk length */
+	public static final long UNKNOWN_LENGTH = -1;
+
+	/** Most bytes to keep marked while a header is read, so that a resource
+		whose format is not handled can be read again from its start
+	*/
+	public static final int MARK_LIMIT = 1 << 20;
+
+
+	/** RIFF chunk identifier */
+	private static final int RIFF = 0x46464952;
+
+	/** RF64 chunk identifier */
+	private static final int RF64 = 0x34364652;
+
+	/** BW64 chunk identifier */
+	private static final int BW64 = 0x34365742;
+
+	/** 64-bit sizes chunk identifier */
+	private static final int DS64 = 0x34367364;
+
+	/** WAVE form type */
+	private static final int WAVE = 0x45564157;
+
+	/** Format chunk identifier */
+	private static final int FMT = 0x20746D66;
+
+	/** Data chunk identifier */
+	private static final int DATA = 0x61746164;
+
+	/** Wave64 RIFF chunk identifier */
+	private static final byte[] W64_RIFF =
+		guid(0x66666972, 0x912E, 0x11CF, 0xA5D628DB04C10000L);
+
+	/** Wave64 WAVE form type */
+	private static final byte[] W64_WAVE =
+		guid(0x65766177, 0xACF3, 0x11D3, 0x8CD100C04F8EDB8AL);
+
+	/** Wave64 format chunk identifier */
+	private static final byte[] W64_FMT =
+		guid(FMT, 0xACF3, 0x11D3, 0x8CD100C04F8EDB8AL);
+
+	/** Wave64 data chunk identifier */
+	private static final byte[] W64_DATA =
+		guid(DATA, 0xACF3, 0x11D3, 0x8CD100C04F8EDB8AL);
+
+	/** Format tag for integer PCM */
+	private static final int WAVE_FORMAT_PCM = 0x0001;
+
+	/** Format tag for floating-point PCM */
+	private static final int WAVE_FORMAT_IEEE_FLOAT = 0x0003;
+
+	/** Format tag for A-law */
+	private static final int WAVE_FORMAT_ALAW = 0x0006;
+
+	/** Format tag for u-law */
+	private static final int WAVE_FORMAT_MULAW = 0x0007;
+
+	/** Format tag whose actual format is given by a subformat */
+	private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+
+	/** Defines audio parameters */
+	private final AudioFormat format;
+
+	/** Position of the data chunk in bytes from the start of the resource */
+	private final long dataOffset;
+
+	/** Length of the data chunk in bytes, or {@code UNKNOWN_LENGTH} */
+	private final long dataLength;
+
+
+	/** Constructs a new instance of this class
+
+		@param      format
+					{@code AudioFormat} defining audio parameters
+
+		@param      dataOffset
+					Position of the data chunk in bytes
+
+		@param      dataLength
+					Length of the data chunk in bytes
+	*/
+	private GDMWaveHeader(AudioFormat format, long dataOffset,
+		long dataLength) {
+
+		this.format = format;
+		this.dataOffset = dataOffset;
+		this.dataLength = dataLength;
+	}
+
+
+	/** Parses a header from an {@code InputStream}. On success, the stream is
+		left positioned at the first byte of audio data
+
+		@param      stream
+					{@code InputStream} positioned at the start of the resource
+
+		@return     null if the resource is not a RIFF/WAVE, RF64, BW64 or
+					Wave64 resource, in which case at most 12 bytes have been
+					consumed, or if its format tag is not handled here, as
+					for ADPCM or MP3, in which case the stream is to be reset
+					for other readers;
+					otherwise returns the parsed header
+
+		@throws     IOException
+					If an I/O exception occurs
+
+		@throws     UnsupportedAudioFileException
+					If the resource is malformed or its format is unsupported
+	*/
+	public static GDMWaveHeader read(InputStream stream) throws IOException,
+		UnsupportedAudioFileException {
+
+		final byte[] b = new byte[40];
+
+		if (readFully(stream, b, 12) < 12) {
+			return null;
+		}
+		final int id = getInt(b, 0);
+
+		try {
+			if (matches(b, 0, W64_RIFF, 0, 12)) {
+				return readWave64(stream, b);
+			}
+
+			if (((id != RIFF) && (id != RF64) && (id != BW64))
+				|| (getInt(b, 8) != WAVE)) {
+
+				return null;
+			}
+			return readRiff(stream, b);
+		} catch (UnhandledFormatException e) {
+			return null;
+		}
+	}
+
+	/** Returns the {@code AudioFormat} of the resource
+		@return     {@code AudioFormat}
+	*/
+	public AudioFormat getFormat() {
+		return format;
+	}
+
+	/** Returns the position of the data chunk
+		@return     Position in bytes from the start of the resource
+	*/
+	public long getDataOffset() {
+		return dataOffset;
+	}
+
+	/** Returns the length of the data chunk
+		@return     Length in bytes, or {@code UNKNOWN_LENGTH}
+	*/
+	public long getDataLength() {
+		return dataLength;
+	}
+
+	/** Returns the length of the data chunk in sample frames
+		@return     Length in frames, or {@code AudioSystem.NOT_SPECIFIED}
+	*/
+	public long getFrameLength() {
+
+		if (dataLength == UNKNOWN_LENGTH) {
+			return AudioSystem.NOT_SPECIFIED;
+		}
+		return dataLength / format.getFrameSize();
+	}
+
+
+	// helper methods
+
+	/** Parses the chunks of a RIFF, RF64 or BW64 resource whose 12-byte header
+		has been consumed
+
+		@param      stream
+					{@code InputStream} positioned at the first chunk
+
+		@param      b
+					Temporary medium of at least 40 bytes
+
+		@return     Parsed header
+
+		@throws     IOException
+					If an I/O exception occurs
+
+		@throws     UnsupportedAudioFileException
+					If the resource is malformed or its format is unsupported
+	*/
+	private static GDMWaveHeader readRiff(InputStream stream, byte[] b)
+		throws IOException, UnsupportedAudioFileException {
+
+		long position = 12;
+		long dataSize = UNKNOWN_LENGTH;
+		AudioFormat format = null;
+
+		// chunks
+		while (true) {
+
+			if (readFully(stream, b, 8) < 8) {
+				throw new UnsupportedAudioFileException("No data chunk.");
+			}
+			final int id = getInt(b, 0);
+			final long size = getInt(b, 4) & 0xFFFFFFFFL;
+			position += 8;
+
+			if (id == DATA) {
+
+				if (format == null) {
+
+					throw new UnsupportedAudioFileException(
+						"No format chunk.");
+				}
+				long length = ((size == 0) || (size == 0xFFFFFFFFL))
+					? UNKNOWN_LENGTH : size;
+
+				// RF64 defers the actual size to the ds64 chunk
+				if ((size == 0xFFFFFFFFL) && (dataSize > 0)) {
+					length = dataSize;
+				}
+				return new GDMWaveHeader(format, position, length);
+			}
+			long skip = size + (size & 1);
+
+			if (id == FMT) {
+
+				if (size < 16) {
+
+					throw new UnsupportedAudioFileException(
+						"Bad format chunk size: " + size);
+				}
+				final int bytes = readChunk(stream, b, size);
+				format = parseFormat(b, bytes);
+				skip -= bytes;
+			} else if (id == DS64) {
+
+				if (size < 24) {
+
+					throw new UnsupportedAudioFileException(
+						"Bad ds64 chunk size: " + size);
+				}
+				final int bytes = readChunk(stream, b, size);
+				dataSize = getLong(b, 8);
+				skip -= bytes;
+			}
+			skipFully(stream, skip);
+			position += size + (size & 1);
+		}
+	}
+
+	/** Parses a Wave64 resource whose first 12 bytes have been consumed.
+		Chunks are identified by GUIDs, sized in 64 bits including their
+		header, and aligned to 8 bytes
+
+		@param      stream
+					{@code InputStream} positioned 12 bytes into the resource
+
+		@param      b
+					Temporary medium of at least 40 bytes
+
+		@return     Parsed header
+
+		@throws     IOException
+					If an I/O exception occurs
+
+		@throws     UnsupportedAudioFileException
+					If the resource is malformed or its format is unsupported
+	*/
+	private static GDMWaveHeader readWave64(InputStream stream, byte[] b)
+		throws IOException, UnsupportedAudioFileException {
+
+		// rest of the RIFF GUID, RIFF size and WAVE GUID
+		if ((readFully(stream, b, 28) < 28)
+			|| !matches(b, 0, W64_RIFF, 12, 4)
+			|| !matches(b, 12, W64_WAVE, 0, 16)) {
+
+			throw new UnsupportedAudioFileException("Bad Wave64 header.");
+		}
+		long position = 40;
+		AudioFormat format = null;
+
+		// chunks
+		while (true) {
+
+			if (readFully(stream, b, 24) < 24) {
+				throw new UnsupportedAudioFileException("No data chunk.");
+			}
+			final long size = getLong(b, 16);
+			position += 24;
+
+			if (matches(b, 0, W64_DATA, 0, 16)) {
+
+				if (format == null) {
+
+					throw new UnsupportedAudioFileException(
+						"No format chunk.");
+				}
+				return new GDMWaveHeader(format, position,
+					(size <= 24) ? UNKNOWN_LENGTH : size - 24);
+			}
+
+			if (size < 24) {
+
+				throw new UnsupportedAudioFileException(
+					"Bad chunk size: " + size);
+			}
+			long skip = ((size + 7) & ~7L) - 24;
+
+			if (matches(b, 0, W64_FMT, 0, 16)) {
+
+				if (size < 24 + 16) {
+
+					throw new UnsupportedAudioFileException(
+						"Bad format chunk size: " + size);
+				}
+				final int bytes = readChunk(stream, b, size - 24);
+				format = parseFormat(b, bytes);
+				skip -= bytes;
+			}
+			skipFully(stream, skip);
+			position += ((size + 7) & ~7L) - 24;
+		}
+	}
+
+	/** Makes an {@code AudioFormat} from the contents of a format chunk
+
+		@param      b
+					Contents of the format chunk
+
+		@param      length
+					Number of valid bytes in {@code b}
+
+		@return     {@code AudioFormat} described by the chunk
+
+		@throws     UnsupportedAudioFileException
+					If the format is unsupported, as an
+					{@code UnhandledFormatException} if its tag is left to
+					other readers
+	*/
+	private static AudioFormat parseFormat(byte[] b, int length)
+		throws UnsupportedAudioFileException {
+
+		int tag = getShort(b, 0);
+		final int channels = getShort(b, 2);
+		final float rate = getInt(b, 4) & 0xFFFFFFFFL;
+		final int frameSize = getShort(b, 12);
+		final int bits = getShort(b, 14);
+
+		if (tag == WAVE_FORMAT_EXTENSIBLE) {
+
+			if (length < 26) {
+
+				throw new UnsupportedAudioFileException(
+					"Bad extensible format chunk.");
+			}
+			tag = getShort(b, 24);
+		}
+
+		if ((channels <= 0) || (frameSize <= 0) || (rate <= 0)) {
+			throw new UnsupportedAudioFileException("Bad format chunk.");
+		}
+
+		switch (tag) {
+			case WAVE_FORMAT_PCM:
+				// sample size follows the container for packed playback
+				final int size = frameSize * 8 / channels;
+
+				return new AudioFormat((size <= 8)
+						? AudioFormat.Encoding.PCM_UNSIGNED
+						: AudioFormat.Encoding.PCM_SIGNED,
+					rate, size, channels, frameSize, rate, false);
+			case WAVE_FORMAT_IEEE_FLOAT:
+				return new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, rate,
+					bits, channels, frameSize, rate, false);
+			case WAVE_FORMAT_ALAW:
+				return new AudioFormat(AudioFormat.Encoding.ALAW, rate, bits,
+					channels, frameSize, rate, false);
+			case WAVE_FORMAT_MULAW:
+				return new AudioFormat(AudioFormat.Encoding.ULAW, rate, bits,
+					channels, frameSize, rate, false);
+			default:
+				throw new UnhandledFormatException(tag);
+		}
+	}
+
+	/** Reads the leading part of a chunk body that fits into a buffer
+
+		@return     Number of bytes read
+
+		@throws     EOFException
+					If the end of stream is reached first
+	*/
+	private static int readChunk(InputStream stream, byte[] b, long size)
+		throws IOException {
+
+		final int out = (int) Math.min(size, b.length);
+
+		if (readFully(stream, b, out) < out) {
+			throw new EOFException();
+		}
+		return out;
+	}
+
+	/** Reads up to an amount of bytes, blocking until they are read or the end
+		of stream is reached
+
+		@return     Number of bytes read
+	*/
+	private static int readFully(InputStream stream, byte[] b, int length)
+		throws IOException {
+
+		int out = 0;
+
+		while (out < length) {
+			final int bytes = stream.read(b, out, length - out);
+
+			if (bytes < 0) {
+				break;
+			}
+			out += bytes;
+		}
+		return out;
+	}
+
+	/** Skips an exact amount of bytes
+
+		@throws     EOFException
+					If the end of stream is reached first
+	*/
+	private static void skipFully(InputStream stream, long length)
+		throws IOException {
+
+		while (length > 0) {
+			long bytes = stream.skip(length);
+
+			if (bytes <= 0) {
+
+				if (stream.read() < 0) {
+					throw new EOFException();
+				}
+				bytes = 1;
+			}
+			length -= bytes;
+		}
+	}
+
+	/** Returns a little-endian unsigned 16-bit integer */
+	private static int getShort(byte[] b, int i) {
+		return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8);
+	}
+
+	/** Returns a little-endian 32-bit integer */
+	private static int getInt(byte[] b, int i) {
+		return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8)
+			| ((b[i + 2] & 0xFF) << 16) | ((b[i + 3] & 0xFF) << 24);
+	}
+
+	/** Returns a little-endian 64-bit integer */
+	private static long getLong(byte[] b, int i) {
+		return (getInt(b, i) & 0xFFFFFFFFL) | ((long) getInt(b, i + 4) << 32);
+	}
+
+	/** Returns whether bytes equal a part of a GUID */
+	private static boolean matches(byte[] b, int i, byte[] guid, int from,
+		int length) {
+
+		for (int j = 0; j < length; j++) {
+
+			if (b[i + j] != guid[from + j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Returns a GUID in its byte order as stored, the first three fields
+		little-endian and the last big-endian
+	*/
+	private static byte[] guid(int data1, int data2, int data3, long data4) {
+		final byte[] out = new byte[16];
+
+		for (int i = 0; i < 4; i++) {
+			out[i] = (byte) (data1 >> (8 * i));
+		}
+
+		for (int i = 0; i < 2; i++) {
+			out[4 + i] = (byte) (data2 >> (8 * i));
+			out[6 + i] = (byte) (data3 >> (8 * i));
+		}
+
+		for (int i = 0; i < 8; i++) {
+			out[8 + i] = (byte) (data4 >> (56 - 8 * i));
+		}
+		return out;
+	}
+
+
+	// helper classes
+
+	/** An {@code UnhandledFormatException} is thrown when a format chunk names
+		a format tag that is left to other readers
+	*/
+	private static class UnhandledFormatException
+		extends UnsupportedAudioFileException {
+
+		/** Serialization version, as required of {@code Exception} */
+		private static final long serialVersionUID = 1L;
+
+
+		/** Constructs a new instance of this class
+
+			@param      tag
+						Format tag named by the format chunk
+		*/
+		private UnhandledFormatException(int tag) {
+			super("Unsupported format tag: " + tag);
+		}
+	}
+}